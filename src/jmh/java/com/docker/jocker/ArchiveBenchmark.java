@@ -0,0 +1,165 @@
+package com.docker.jocker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Archive a container export (Content-Length body) and logs (chunked body) to a file, from a local stand-in server,
+ * by copying the returned stream through a heap buffer as callers used to, or with the archive-to-file APIs.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ArchiveBenchmark {
+
+    @Param({"268435456"})
+    public long size;
+
+    private final ByteBuffer data = ByteBuffer.allocateDirect(256 * 1024);
+    private ServerSocketChannel server;
+    private DockerClient client;
+    private Path target;
+
+    @Setup
+    public void setup() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        final Thread accept = new Thread(() -> {
+            try {
+                while (true) {
+                    final SocketChannel channel = server.accept();
+                    final Thread serve = new Thread(() -> serve(channel));
+                    serve.setDaemon(true);
+                    serve.start();
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        });
+        accept.setDaemon(true);
+        accept.start();
+        client = new DockerClient("tcp://127.0.0.1:" + ((InetSocketAddress) server.getLocalAddress()).getPort());
+        target = Files.createTempFile("jocker", ".tar");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long heapExport() throws IOException {
+        return heapCopy(client.containerExport("c"));
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        return client.containerExport("c", target);
+    }
+
+    @Benchmark
+    public long heapLogs() throws IOException {
+        return heapCopy(client.containerLogs("c", false, true, true, false, 0, "all"));
+    }
+
+    @Benchmark
+    public long logs() throws IOException {
+        return client.containerLogs("c", false, true, true, false, 0, "all", target);
+    }
+
+    private long heapCopy(InputStream in) throws IOException {
+        try (InputStream body = in; OutputStream out = Files.newOutputStream(target)) {
+            final byte[] buffer = new byte[8192];
+            long copied = 0;
+            int n;
+            while ((n = body.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+                copied += n;
+            }
+            return copied;
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (SocketChannel ch = channel) {
+            final InputStream in = Channels.newInputStream(ch);
+            while (true) {
+                final StringBuilder request = new StringBuilder();
+                int c;
+                int newlines = 0;
+                while ((c = in.read()) >= 0) {
+                    request.append((char) c);
+                    if (c == '\n') {
+                        if (++newlines == 2) break;
+                    } else if (c != '\r') {
+                        newlines = 0;
+                    }
+                }
+                if (c < 0) return;
+
+                final String path = request.toString().split(" ")[1];
+                if (path.startsWith("/version")) {
+                    final String json = "{\"ApiVersion\":\"1.40\"}";
+                    write(ch, "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + json.length() + "\r\n\r\n" + json);
+                } else if (path.endsWith("/export")) {
+                    write(ch, "HTTP/1.1 200 OK\r\nContent-Type: application/x-tar\r\nContent-Length: " + size + "\r\n\r\n");
+                    for (long left = size; left > 0; ) {
+                        final ByteBuffer b = data.duplicate();
+                        b.limit((int) Math.min(left, b.capacity()));
+                        left -= b.remaining();
+                        write(ch, b);
+                    }
+                } else {
+                    write(ch, "HTTP/1.1 200 OK\r\nContent-Type: application/vnd.docker.raw-stream\r\nTransfer-Encoding: chunked\r\n\r\n");
+                    for (long left = size; left > 0; ) {
+                        final int n = (int) Math.min(left, 32 * 1024);
+                        left -= n;
+                        write(ch, Integer.toHexString(n) + "\r\n");
+                        final ByteBuffer b = data.duplicate();
+                        b.limit(n);
+                        write(ch, b);
+                        write(ch, "\r\n");
+                    }
+                    write(ch, "0\r\n\r\n");
+                }
+            }
+        } catch (IOException e) {
+            // client closed connection
+        }
+    }
+
+    private static void write(WritableByteChannel channel, String s) throws IOException {
+        write(channel, ByteBuffer.wrap(s.getBytes(US_ASCII)));
+    }
+
+    private static void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
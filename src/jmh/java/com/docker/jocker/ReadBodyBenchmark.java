@@ -0,0 +1,84 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.ContainerSummary;
+import com.google.gson.Gson;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Decode a <code>containerList(all=true)</code> payload, by loading body as a String first like client used to, or
+ * straight from response body with {@link HttpRestClient#readBody}. Payload is generated, with containers shaped like
+ * those of a compose project: ports, labels, network and volume. Run with <code>-prof gc</code> to compare allocations.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ReadBodyBenchmark {
+
+    @Param({"1000", "10000"})
+    public int containers;
+
+    private byte[] payload;
+    private HttpRestClient client;
+    private Gson gson;
+
+    @Setup
+    public void setup() {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < containers; i++) {
+            if (i > 0) json.append(',');
+            json.append(container(i));
+        }
+        payload = json.append("]\n").toString().getBytes(UTF_8);
+        client = new HttpRestClient(URI.create("unix:///var/run/docker.sock"), null);
+        gson = HttpRestClient.createGson();
+    }
+
+    private static String container(int i) {
+        return "{\"Id\":\"" + String.format("%064x", i) + "\",\"Names\":[\"/svc_" + i + "\"]," +
+                "\"Image\":\"registry.example.com/team/service:1.2.3\",\"ImageID\":\"sha256:" + String.format("%064x", i * 7) + "\"," +
+                "\"Command\":\"/docker-entrypoint.sh nginx -g 'daemon off;'\",\"Created\":1604311200," +
+                "\"Ports\":[{\"IP\":\"0.0.0.0\",\"PrivatePort\":80,\"PublicPort\":" + (30000 + i % 1000) + ",\"Type\":\"tcp\"},{\"PrivatePort\":443,\"Type\":\"tcp\"}]," +
+                "\"Labels\":{\"com.docker.compose.project\":\"bench\",\"com.docker.compose.service\":\"svc\"," +
+                "\"com.docker.compose.container-number\":\"" + i + "\",\"maintainer\":\"NGINX Docker Maintainers\"}," +
+                "\"State\":\"running\",\"Status\":\"Up 3 hours\",\"HostConfig\":{\"NetworkMode\":\"bench_default\"}," +
+                "\"NetworkSettings\":{\"Networks\":{\"bench_default\":{\"IPAMConfig\":null,\"Links\":null,\"Aliases\":null," +
+                "\"NetworkID\":\"" + String.format("%064x", 42) + "\",\"EndpointID\":\"" + String.format("%064x", i * 3) + "\"," +
+                "\"Gateway\":\"172.18.0.1\",\"IPAddress\":\"172.18." + (i / 250) + "." + (i % 250) + "\",\"IPPrefixLen\":16," +
+                "\"IPv6Gateway\":\"\",\"GlobalIPv6Address\":\"\",\"GlobalIPv6PrefixLen\":0,\"MacAddress\":\"02:42:ac:12:00:02\",\"DriverOpts\":null}}}," +
+                "\"Mounts\":[{\"Type\":\"volume\",\"Name\":\"" + String.format("%064x", i * 5) + "\",\"Source\":\"/var/lib/docker/volumes/x/_data\"," +
+                "\"Destination\":\"/data\",\"Driver\":\"local\",\"Mode\":\"\",\"RW\":true,\"Propagation\":\"\"}]}";
+    }
+
+    private HttpRestClient.Response<ByteArrayInputStream> response() {
+        final ByteArrayInputStream body = new ByteArrayInputStream(payload);
+        return new HttpRestClient.Response<>(Collections.emptyMap(), body, body);
+    }
+
+    @Benchmark
+    public ContainerSummary string() throws IOException {
+        return gson.fromJson(IOUtils.toString(response().getBody(), UTF_8), ContainerSummary.class);
+    }
+
+    @Benchmark
+    public ContainerSummary streaming() throws IOException {
+        return client.readBody(response(), ContainerSummary.class);
+    }
+}
@@ -0,0 +1,71 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read a multiplexed stream made of small stdout and stderr frames, as written by a chatty process, with
+ * {@link DockerMultiplexedInputStream} and {@link DockerMultiplexedFrameReader}. Scores are per frame.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DockerMultiplexedFrameReaderBenchmark {
+
+    private static final int UNITS = 100_000;
+    private static final int FRAMES = UNITS * 3;
+
+    /** frames from DockerMultiplexedInputStreamTest fixtures */
+    private static final byte[] UNIT = {
+            1, 0, 0, 0, 0, 0, 0, 3, 'A', 'B', 'C',
+            2, 0, 0, 0, 0, 0, 0, 4, 'D', 'E', 'F', 'G',
+            1, 0, 0, 0, 0, 0, 0, 5, 'H', 'I', 'J', 'K', 'L'};
+
+    private byte[] stream;
+
+    @Setup
+    public void setup() {
+        stream = new byte[UNIT.length * UNITS];
+        for (int i = 0; i < UNITS; i++) {
+            System.arraycopy(UNIT, 0, stream, i * UNIT.length, UNIT.length);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long inputStream() throws IOException {
+        final DockerMultiplexedInputStream in = new DockerMultiplexedInputStream(new ByteArrayInputStream(stream));
+        in.redirectStderr(NullOutputStream.NULL_OUTPUT_STREAM);
+        final byte[] buffer = new byte[64];
+        long bytes = 0;
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) > 0) {
+            bytes += n;
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long frameReader() throws IOException {
+        final DockerMultiplexedFrameReader frames = new DockerMultiplexedFrameReader(new ByteArrayInputStream(stream));
+        long bytes = 0;
+        while (frames.next()) {
+            bytes += frames.getPayload().remaining();
+        }
+        return bytes;
+    }
+}
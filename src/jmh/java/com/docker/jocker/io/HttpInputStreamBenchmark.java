@@ -0,0 +1,141 @@
+package com.docker.jocker.io;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Parse status and headers of a typical daemon response, with the former byte-per-byte parser, and with
+ * {@link HttpInputStream}, either new or reused for consecutive responses on a keep-alive connection. Run with
+ * <code>-prof gc</code> for allocations per response, <code>reads</code> counts calls to socket stream, to be divided
+ * by <code>responses</code>.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class HttpInputStreamBenchmark {
+
+    private static final byte[] RESPONSE = ("HTTP/1.1 200 OK\r\n" +
+            "Api-Version: 1.40\r\n" +
+            "Content-Type: application/json\r\n" +
+            "Docker-Experimental: false\r\n" +
+            "Ostype: linux\r\n" +
+            "Server: Docker/19.03.12 (linux)\r\n" +
+            "Date: Mon, 02 Nov 2020 10:00:00 GMT\r\n" +
+            "Content-Length: 2\r\n" +
+            "\r\n" +
+            "{}").getBytes(US_ASCII);
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Reads {
+        public long reads;
+        public long responses;
+
+        private HttpInputStream connection;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            reads = 0;
+            responses = 0;
+            // endless sequence of responses, read at most one response at a time like a socket would
+            connection = new HttpInputStream(new InputStream() {
+                private int pos;
+
+                @Override
+                public int read() {
+                    reads++;
+                    final int b = RESPONSE[pos];
+                    pos = (pos + 1) % RESPONSE.length;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    reads++;
+                    final int n = Math.min(len, RESPONSE.length - pos);
+                    System.arraycopy(RESPONSE, pos, b, off, n);
+                    pos = (pos + n) % RESPONSE.length;
+                    return n;
+                }
+            });
+        }
+
+        InputStream socket() {
+            responses++;
+            return new ByteArrayInputStream(RESPONSE) {
+                @Override
+                public synchronized int read() {
+                    reads++;
+                    return super.read();
+                }
+
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    reads++;
+                    return super.read(b, off, len);
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public int httpInputStream(Reads reads) throws IOException {
+        final HttpInputStream in = new HttpInputStream(reads.socket());
+        return in.readStatus() + in.readHeaders().size();
+    }
+
+    @Benchmark
+    public int keepAlive(Reads reads) throws IOException {
+        final HttpInputStream in = reads.connection;
+        reads.responses++;
+        final int status = in.readStatus() + in.readHeaders().size();
+        in.skip(2); // body
+        return status;
+    }
+
+    @Benchmark
+    public int bytePerByte(Reads reads) throws IOException {
+        final InputStream in = reads.socket();
+        String line = readLine(in);
+        final int i = line.indexOf(' ');
+        final int status = Integer.parseInt(line.substring(i + 1, line.indexOf(' ', i + 1)));
+        final Map<String, String> headers = new HashMap<>();
+        while ((line = readLine(in)) != null) {
+            if (line.length() == 0) break;
+            final int x = line.indexOf(':');
+            headers.put(line.substring(0, x), line.substring(x + 2));
+        }
+        return status + headers.size();
+    }
+
+    /**
+     * Parser used by HttpRestClient before {@link HttpInputStream}.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        final StringBuilder s = new StringBuilder();
+        char c;
+        while ((c = (char) in.read()) != '\r') {
+            s.append(c);
+        }
+        in.read(); // \n
+        return s.toString();
+    }
+}
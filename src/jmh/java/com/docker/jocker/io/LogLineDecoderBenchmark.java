@@ -0,0 +1,92 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Split a multiplexed log stream with timestamps into lines, with a <code>BufferedReader</code> over
+ * {@link DockerMultiplexedInputStream} as consumers used to, or with {@link LogLineDecoder} fed with a 32KB buffer like
+ * {@link com.docker.jocker.DockerClient#containerLogs}. Scores are lines per second.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class LogLineDecoderBenchmark {
+
+    private static final int LINES = 100_000;
+
+    private byte[] logs;
+
+    /**
+     * Access-log like lines, one per frame, 10% on stderr.
+     */
+    @Setup
+    public void setup() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < LINES; i++) {
+            final byte[] line = String.format("2020-01-01T00:%02d:%02d.%09dZ GET /api/items/%d 200 %d ms%n",
+                    (i / 60) % 60, i % 60, i, i, i % 1000).getBytes(US_ASCII);
+            out.write(new byte[]{(byte) (i % 10 == 0 ? 2 : 1), 0, 0, 0, 0, 0, (byte) (line.length >> 8), (byte) line.length});
+            out.write(line);
+        }
+        logs = out.toByteArray();
+    }
+
+    /**
+     * stderr is discarded, as reading it requires a second stream.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void bufferedReader(Blackhole bh) throws IOException {
+        final DockerMultiplexedInputStream in = new DockerMultiplexedInputStream(new ByteArrayInputStream(logs));
+        in.redirectStderr(NullOutputStream.NULL_OUTPUT_STREAM);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final int space = line.indexOf(' ');
+            bh.consume(Instant.parse(line.substring(0, space)));
+            bh.consume(line.substring(space + 1));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void logLineDecoder(Blackhole bh) throws IOException {
+        final LogLineDecoder decoder = new LogLineDecoder(true, true, (stream, timestamp, line) -> {
+            bh.consume(timestamp);
+            bh.consume(line);
+        });
+        final InputStream in = new ByteArrayInputStream(logs);
+        final byte[] buffer = new byte[32 * 1024];
+        final ByteBuffer data = ByteBuffer.wrap(buffer);
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            data.limit(read).position(0);
+            decoder.decode(data);
+        }
+        decoder.flush();
+    }
+}
@@ -0,0 +1,139 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.HttpInputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Keep HTTP/1.1 connections to docker daemon alive so they can be reused by subsequent requests.
+ * Idle connections are evicted lazily after <code>keepAlive</code> milliseconds, and at most
+ * <code>maxIdle</code> connections are retained, extra ones get closed on release. Pool doesn't limit the number of
+ * connections in use: long-lived streams (events, logs) hold theirs as long as they are read, so concurrent requests
+ * just open new ones.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ConnectionPool implements Closeable {
+
+    public static final int DEFAULT_MAX_IDLE = 5;
+    public static final long DEFAULT_KEEP_ALIVE = 30_000;
+
+    private final int maxIdle;
+    private final long keepAlive;
+    private final Deque<Idle> idle = new ArrayDeque<>();
+    private boolean closed;
+
+    public ConnectionPool(int maxIdle, long keepAlive) {
+        this.maxIdle = maxIdle;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * @return the most recently released connection, or <code>null</code> if none is available.
+     */
+    public synchronized Connection get() {
+        evict(System.currentTimeMillis());
+        final Idle i = idle.pollFirst();
+        return i != null ? i.connection : null;
+    }
+
+    /**
+     * Return a connection to the pool once the previous response has been fully consumed.
+     */
+    public void release(Connection connection) throws IOException {
+        synchronized (this) {
+            if (!closed && idle.size() < maxIdle && !connection.isClosed()) {
+                final long now = System.currentTimeMillis();
+                idle.addFirst(new Idle(connection, now));
+                evict(now);
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    public synchronized int idleCount() {
+        return idle.size();
+    }
+
+    private void evict(long now) {
+        // most recently used connections are at head, so stale ones are on tail
+        final Iterator<Idle> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            final Idle i = it.next();
+            if (now - i.since < keepAlive) break;
+            it.remove();
+            closeQuietly(i.connection);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Idle i : idle) {
+            closeQuietly(i.connection);
+        }
+        idle.clear();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+
+    private static class Idle {
+        final Connection connection;
+        final long since;
+
+        Idle(Connection connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+
+    /**
+     * A socket to docker daemon, with the buffered stream used to read responses, so buffer is reused across
+     * requests sent on this connection.
+     */
+    public static class Connection implements Closeable {
+        private final Socket socket;
+        private HttpInputStream in;
+
+        public Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        public Socket getSocket() {
+            return socket;
+        }
+
+        public HttpInputStream getInputStream() throws IOException {
+            if (in == null) {
+                in = new HttpInputStream(socket.getInputStream(), socket.getChannel());
+            }
+            return in;
+        }
+
+        public OutputStream getOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        public boolean isClosed() {
+            return socket.isClosed();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
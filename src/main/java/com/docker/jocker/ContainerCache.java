@@ -0,0 +1,363 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.ContainerInspectResponse;
+import com.docker.jocker.model.ContainerSummary;
+import com.docker.jocker.model.ContainerSummaryInner;
+import com.docker.jocker.model.ContainersFilters;
+import com.docker.jocker.model.EventsFilters;
+import com.docker.jocker.model.SystemEventsResponse;
+import com.google.gson.Gson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local cache of containers, kept up to date by daemon events, so code which needs to know what's running can query
+ * memory rather than polling daemon.
+ * <p>
+ * Cache is seeded by a <code>containerList(all=true)</code> snapshot, then applies container events from an
+ * {@link EventStream}, which resumes after a lost connection without missing events. If a container can't be
+ * refreshed as daemon can't be reached, cache is seeded again. Other failures, like an error status or a malformed
+ * event, stop updates, and lookups then throw {@link IllegalStateException} rather than return stale data. Cached
+ * {@link ContainerSummaryInner} are updated in place (<code>Status</code> is not maintained), so lookups return copies,
+ * which events won't change behind caller's back.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ContainerCache implements Closeable {
+
+    private final DockerClient client;
+    private final Gson gson = HttpRestClient.createGson();
+    private final EventsFilters filters = new EventsFilters().type("container");
+
+    private final Map<String, ContainerSummaryInner> containers = new HashMap<>();
+    private final Map<String, String> names = new HashMap<>();
+    private final Map<String, Map<String, Set<String>>> labels = new HashMap<>();
+    private final Map<String, ContainerInspectResponse> inspected = new HashMap<>();
+    private long generation;
+
+    private Thread thread;
+    private volatile EventStream stream;
+    private volatile boolean closed;
+    private IOException failure;
+
+    public ContainerCache(DockerClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Seed cache and start watching events. Cache is ready for lookups when this method returns.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Cache already started");
+        }
+        connect();
+        thread = new Thread(this::run, "docker-container-cache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Events stream is opened before containers get listed, so we don't miss changes in between. Events for changes
+     * already reflected by list are harmless to apply again.
+     */
+    private void connect() throws IOException {
+        final EventStream s = new EventStream(client, filters, null);
+        s.open();
+        try {
+            seed();
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        stream = s;
+        if (closed) {
+            s.close();
+        }
+    }
+
+    private void seed() throws IOException {
+        final ContainerSummary all = client.containerList(true, 0, false, (String) null);
+        synchronized (this) {
+            containers.clear();
+            names.clear();
+            labels.clear();
+            inspected.clear();
+            generation++;
+            for (ContainerSummaryInner container : all) {
+                put(container);
+            }
+        }
+    }
+
+    private void run() {
+        final IOException[] refresh = new IOException[1];
+        while (!closed) {
+            try {
+                stream.consume(event -> {
+                    try {
+                        apply(event);
+                        return false;
+                    } catch (IOException e) {
+                        refresh[0] = e;
+                        return true;
+                    }
+                });
+                if (refresh[0] == null) return; // closed
+                final IOException e = refresh[0];
+                refresh[0] = null;
+                throw e;
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (closed) return;
+                if (!EventStream.isConnectionLoss(e)) {
+                    fail(e);
+                    return;
+                }
+            }
+
+            // a container couldn't be refreshed, so we may have missed changes
+            while (!closed) {
+                try {
+                    Thread.sleep(EventStream.RECONNECT_DELAY);
+                    connect();
+                    break;
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    if (!EventStream.isConnectionLoss(e)) {
+                        fail(e);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void fail(IOException cause) {
+        failure = cause;
+    }
+
+    /**
+     * Lookups don't return data which isn't updated anymore.
+     */
+    private void check() {
+        if (failure != null) {
+            throw new IllegalStateException("Container cache is not updated, events stream failed", failure);
+        }
+    }
+
+    void apply(SystemEventsResponse event) throws IOException {
+        if (event.getActor() == null || event.getAction() == null) return;
+        final String id = event.getActor().getID();
+        String action = event.getAction();
+        final int colon = action.indexOf(':');
+        if (colon > 0) {
+            // health_status: healthy
+            action = action.substring(0, colon);
+        }
+
+        switch (action) {
+            case "create":
+            case "rename":
+            case "health_status":
+                refresh(id);
+                break;
+            case "start":
+            case "unpause":
+                setState(id, "running");
+                break;
+            case "pause":
+                setState(id, "paused");
+                break;
+            case "die":
+                setState(id, "exited");
+                break;
+            case "destroy":
+                synchronized (this) {
+                    remove(id);
+                    invalidate(id);
+                }
+                break;
+            default:
+                // exec, attach, etc don't impact container state
+                synchronized (this) {
+                    invalidate(id);
+                }
+        }
+    }
+
+    private void refresh(String id) throws IOException {
+        final ContainerSummary found = client.containerList(true, 0, false, new ContainersFilters().id(id));
+        synchronized (this) {
+            remove(id);
+            invalidate(id);
+            for (ContainerSummaryInner container : found) {
+                put(container);
+            }
+        }
+    }
+
+    private synchronized void setState(String id, String state) {
+        final ContainerSummaryInner container = containers.get(id);
+        if (container != null) {
+            container.setState(state);
+        }
+        invalidate(id);
+    }
+
+    private void invalidate(String id) {
+        inspected.remove(id);
+        generation++;
+    }
+
+    synchronized void put(ContainerSummaryInner container) {
+        final String id = container.getId();
+        containers.put(id, container);
+        if (container.getNames() != null) {
+            for (String name : container.getNames()) {
+                names.put(name(name), id);
+            }
+        }
+        if (container.getLabels() != null) {
+            for (Map.Entry<String, String> label : container.getLabels().entrySet()) {
+                labels.computeIfAbsent(label.getKey(), k -> new HashMap<>())
+                      .computeIfAbsent(label.getValue(), v -> new HashSet<>())
+                      .add(id);
+            }
+        }
+    }
+
+    private void remove(String id) {
+        final ContainerSummaryInner container = containers.remove(id);
+        if (container == null) return;
+        if (container.getNames() != null) {
+            for (String name : container.getNames()) {
+                names.remove(name(name), id);
+            }
+        }
+        if (container.getLabels() != null) {
+            for (Map.Entry<String, String> label : container.getLabels().entrySet()) {
+                final Map<String, Set<String>> values = labels.get(label.getKey());
+                if (values == null) continue;
+                final Set<String> ids = values.get(label.getValue());
+                if (ids == null) continue;
+                ids.remove(id);
+                if (ids.isEmpty()) values.remove(label.getValue());
+                if (values.isEmpty()) labels.remove(label.getKey());
+            }
+        }
+    }
+
+    /**
+     * API reports container names with a leading <code>/</code>
+     */
+    private static String name(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    public synchronized List<ContainerSummaryInner> list() {
+        check();
+        final List<ContainerSummaryInner> list = new ArrayList<>(containers.size());
+        for (ContainerSummaryInner container : containers.values()) {
+            list.add(copy(container));
+        }
+        return list;
+    }
+
+    /**
+     * @return container with full ID <code>id</code>, or <code>null</code> if unknown.
+     */
+    public synchronized ContainerSummaryInner get(String id) {
+        check();
+        return copy(containers.get(id));
+    }
+
+    /**
+     * @return container named <code>name</code>, with or without leading <code>/</code>, or <code>null</code> if unknown.
+     */
+    public synchronized ContainerSummaryInner getByName(String name) {
+        check();
+        final String id = names.get(name(name));
+        return id != null ? copy(containers.get(id)) : null;
+    }
+
+    /**
+     * @param value label value, <code>null</code> to select containers with label <code>key</code> set to any value.
+     */
+    public synchronized List<ContainerSummaryInner> getByLabel(String key, String value) {
+        check();
+        final Map<String, Set<String>> values = labels.get(key);
+        if (values == null) return Collections.emptyList();
+
+        final List<ContainerSummaryInner> found = new ArrayList<>();
+        if (value != null) {
+            for (String id : values.getOrDefault(value, Collections.emptySet())) {
+                found.add(copy(containers.get(id)));
+            }
+        } else {
+            for (Set<String> ids : values.values()) {
+                for (String id : ids) {
+                    found.add(copy(containers.get(id)));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Deep copy, as models are mutable and cached ones get updated by events thread.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T copy(T model) {
+        return model != null ? gson.fromJson(gson.toJsonTree(model), (Class<T>) model.getClass()) : null;
+    }
+
+    /**
+     * Inspect container by ID or name. Result is kept in memory until an event is received for this container.
+     */
+    public ContainerInspectResponse inspect(String container) throws IOException {
+        final long g;
+        synchronized (this) {
+            check();
+            final String id = names.getOrDefault(name(container), container);
+            final ContainerInspectResponse cached = inspected.get(id);
+            if (cached != null) return copy(cached);
+            g = generation;
+        }
+
+        final ContainerInspectResponse inspect = client.containerInspect(container);
+        synchronized (this) {
+            // don't cache a stale result if container changed while we were inspecting it
+            if (generation == g) {
+                inspected.put(inspect.getId(), copy(inspect));
+            }
+        }
+        return inspect;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final Thread t;
+        synchronized (this) {
+            closed = true;
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+        final EventStream s = stream;
+        if (s != null) {
+            s.close();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.Rfc3339;
+import com.docker.jocker.model.ContainerInspectResponse;
+import com.docker.jocker.model.ContainerState;
+import com.docker.jocker.model.ContainerWaitResponse;
+import com.docker.jocker.model.ContainerWaitResponseError;
+import com.docker.jocker.model.EventsFilters;
+import com.docker.jocker.model.SystemEventsResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Wait for many containers to stop with a single <code>/events</code> stream, as an alternative to
+ * {@link DockerClient#containerWait} which holds a connection for each container until it exits.
+ * <p>
+ * Containers are inspected when registered, so those already stopped complete immediately. Others complete on
+ * <code>die</code> event, with exit code set by event, or by inspecting container if event doesn't report it. If events
+ * stream fails for another reason than a lost connection, containers still running complete with this failure.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ContainerWaiter implements Closeable {
+
+    /** <code>die</code> events kept for containers which stopped before they get registered */
+    static final int RECENT_EXITS = 1024;
+
+    private final DockerClient client;
+    private final EventStream stream;
+    /** callers waiting for container, each with its own future so they can cancel independently */
+    private final Map<String, List<CompletableFuture<ContainerWaitResponse>>> waiting = new HashMap<>();
+    private final Map<String, SystemEventsResponse> exited = new LinkedHashMap<String, SystemEventsResponse>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SystemEventsResponse> eldest) {
+            return size() > RECENT_EXITS;
+        }
+    };
+    private volatile Thread thread;
+    private volatile boolean closed;
+    /** events stream failure, waiter can't be used anymore */
+    private Exception failure;
+
+    public ContainerWaiter(DockerClient client) {
+        this.client = client;
+        this.stream = new EventStream(client, new EventsFilters().type("container").event("die"), null);
+    }
+
+    /**
+     * Subscribe to <code>die</code> events. Containers can be registered when this method returns.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Waiter already started");
+        }
+        stream.open();
+        thread = new Thread(this::run, "docker-container-waiter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            stream.consume(event -> {
+                died(event);
+                return false;
+            });
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Wait for container to stop, like {@link DockerClient#containerWait} with <code>not-running</code> condition.
+     * @param container container ID or name
+     */
+    public CompletableFuture<ContainerWaitResponse> waitFor(String container) throws IOException {
+        if (thread == null) {
+            throw new IllegalStateException("Waiter not started");
+        }
+        // events stream is already open, so if container is running now we will get its die event
+        return waitFor(client.containerInspect(container));
+    }
+
+    CompletableFuture<ContainerWaitResponse> waitFor(ContainerInspectResponse inspect) {
+        final ContainerState state = inspect.getState();
+        if (state == null || !Boolean.TRUE.equals(state.isRunning())) {
+            return CompletableFuture.completedFuture(exit(state));
+        }
+
+        final String id = inspect.getId();
+        final SystemEventsResponse died;
+        final CompletableFuture<ContainerWaitResponse> future;
+        synchronized (this) {
+            if (failure != null) {
+                final CompletableFuture<ContainerWaitResponse> failed = new CompletableFuture<>();
+                failed.completeExceptionally(failure);
+                return failed;
+            }
+            if (closed) {
+                throw new IllegalStateException("Waiter is closed");
+            }
+            final SystemEventsResponse last = exited.remove(id);
+            // container may have been restarted since this event, by a restart policy
+            died = last != null && !isBefore(last, state.getStartedAt()) ? last : null;
+            future = new CompletableFuture<>();
+            if (died == null) {
+                waiting.computeIfAbsent(id, k -> new ArrayList<>()).add(future);
+            }
+        }
+        if (died != null) {
+            complete(Collections.singletonList(future), died);
+            return future;
+        }
+        // forget caller if it cancels, and container once nobody waits for it
+        future.whenComplete((r, e) -> {
+            synchronized (this) {
+                final List<CompletableFuture<ContainerWaitResponse>> futures = waiting.get(id);
+                if (futures != null && futures.remove(future) && futures.isEmpty()) {
+                    waiting.remove(id);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return <code>true</code> if event is known to have happened before container was started at
+     * <code>startedAt</code>
+     */
+    private static boolean isBefore(SystemEventsResponse event, String startedAt) {
+        if (startedAt == null) return false;
+        final long started = Rfc3339.parseNanos(ByteBuffer.wrap(startedAt.getBytes(US_ASCII)), 0, startedAt.length());
+        if (started == Rfc3339.INVALID) return false;
+        if (event.getTimeNano() != null) return event.getTimeNano() < started;
+        return event.getTime() != null && event.getTime() < started / 1_000_000_000;
+    }
+
+    void died(SystemEventsResponse event) {
+        if (event.getActor() == null) return;
+        final String id = event.getActor().getID();
+        final List<CompletableFuture<ContainerWaitResponse>> futures;
+        synchronized (this) {
+            futures = waiting.remove(id);
+            if (futures == null) {
+                exited.put(id, event);
+                return;
+            }
+        }
+        complete(new ArrayList<>(futures), event);
+    }
+
+    private void complete(Collection<CompletableFuture<ContainerWaitResponse>> futures, SystemEventsResponse event) {
+        try {
+            final ContainerWaitResponse exit = exit(event);
+            futures.forEach(f -> f.complete(exit));
+        } catch (IOException | RuntimeException e) {
+            futures.forEach(f -> f.completeExceptionally(e));
+        }
+    }
+
+    private ContainerWaitResponse exit(SystemEventsResponse event) throws IOException {
+        final Map<String, String> attributes = event.getActor().getAttributes();
+        final String exitCode = attributes != null ? attributes.get("exitCode") : null;
+        if (exitCode != null) {
+            try {
+                return new ContainerWaitResponse().statusCode(Integer.valueOf(exitCode));
+            } catch (NumberFormatException e) {
+                // fall back to inspect
+            }
+        }
+        return exit(client.containerInspect(event.getActor().getID()).getState());
+    }
+
+    private static ContainerWaitResponse exit(ContainerState state) {
+        final ContainerWaitResponse response = new ContainerWaitResponse();
+        if (state == null) return response;
+        response.setStatusCode(state.getExitCode());
+        if (state.getError() != null && !state.getError().isEmpty()) {
+            response.setError(new ContainerWaitResponseError().message(state.getError()));
+        }
+        return response;
+    }
+
+    /**
+     * Stop listening for events. Containers still running are reported as failed.
+     */
+    @Override
+    public void close() throws IOException {
+        final Thread t;
+        synchronized (this) {
+            closed = true;
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+        stream.close();
+        fail(new IOException("Waiter closed"));
+    }
+
+    private void fail(Exception cause) {
+        final List<CompletableFuture<ContainerWaitResponse>> pending = new ArrayList<>();
+        synchronized (this) {
+            if (!closed) {
+                failure = cause;
+            }
+            waiting.values().forEach(pending::addAll);
+            waiting.clear();
+        }
+        for (CompletableFuture<ContainerWaitResponse> future : pending) {
+            future.completeExceptionally(cause);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.DockerMultiplexedFrameReader;
+import com.docker.jocker.io.Sha256;
+import com.docker.jocker.io.TarArchive;
+import com.docker.jocker.model.ExecConfig;
+import com.docker.jocker.model.FileSystemHeaders;
+import com.docker.jocker.model.Streams;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keep a directory in container in sync with a local directory, only sending files which changed since last sync.
+ * <p>
+ * A manifest records size, modification time and SHA-256 hash of files sent. Local files with same size and
+ * modification time as in manifest are considered unchanged without being read, others are hashed and only sent if
+ * content changed. Changes are sent as a single tar archive streamed from disk. Files removed locally are deleted by
+ * executing <code>rm</code> in container.
+ * <p>
+ * Container directory is checked with {@link DockerClient#containerArchiveInfo}: if it doesn't exist, or has been
+ * modified since last sync, typically as container has been re-created, manifest is discarded and all files are sent.
+ * Changes made in container to nested files are not detected.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class DirectorySync {
+
+    /** maximum length of paths passed to a single <code>rm</code> command */
+    static final int MAX_ARGS_LENGTH = 64 * 1024;
+
+    private final DockerClient client;
+    private final String container;
+    private final Path source;
+    private final String target;
+
+    private Map<String, Entry> manifest = new HashMap<>();
+    /** container directory modification time after last sync */
+    private String mtime;
+
+    /**
+     * @param target absolute path of directory in container
+     */
+    public DirectorySync(DockerClient client, String container, Path source, String target) {
+        this.client = client;
+        this.container = container;
+        this.source = source;
+        this.target = target.length() > 1 && target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+        if (!this.target.startsWith("/") || this.target.equals("/")) {
+            throw new IllegalArgumentException("Target must be an absolute path, not root: " + target);
+        }
+    }
+
+    public synchronized Result sync() throws IOException {
+        FileSystemHeaders stat;
+        try {
+            stat = client.containerArchiveInfo(container, target);
+        } catch (NotFoundException e) {
+            stat = null;
+        }
+        if (stat == null || !Objects.equals(stat.getMtime(), mtime)) {
+            manifest.clear();
+        }
+
+        final Map<String, Entry> local = scan();
+        final List<String> deleted = deleted(local);
+        final List<String> changed = changed(local);
+
+        // sent to parent directory, so target can be created
+        final int slash = target.lastIndexOf('/');
+        final String parentDir = slash == 0 ? "/" : target.substring(0, slash);
+        final String base = target.substring(slash + 1);
+        final TarArchive archive = new TarArchive();
+        if (stat == null) {
+            archive.addEntry(source, base);
+        }
+        long bytes = 0;
+        for (String path : changed) {
+            archive.addEntry(source.resolve(path), base + "/" + path);
+            bytes += local.get(path).size;
+        }
+
+        if (!deleted.isEmpty()) {
+            delete(deleted);
+        }
+        if (archive.size() > 0) {
+            client.putContainerArchive(container, parentDir, false, archive);
+        }
+        commit(local);
+        mtime = client.containerArchiveInfo(container, target).getMtime();
+        return new Result(archive.size(), deleted.size(), bytes);
+    }
+
+    /**
+     * @return paths in manifest which have been removed, or have changed type, omitting content of removed directories
+     */
+    List<String> deleted(Map<String, Entry> local) {
+        final List<String> deleted = new ArrayList<>();
+        String parent = null;
+        for (Map.Entry<String, Entry> e : new TreeMap<>(manifest).entrySet()) {
+            final Entry now = local.get(e.getKey());
+            if (now != null && now.type == e.getValue().type) continue;
+            if (parent != null && e.getKey().startsWith(parent)) continue;
+            deleted.add(e.getKey());
+            parent = e.getKey() + "/";
+        }
+        return deleted;
+    }
+
+    /**
+     * Compare local files with manifest, setting their hash.
+     * @return paths of new or changed local files and directories, parents first
+     */
+    List<String> changed(Map<String, Entry> local) throws IOException {
+        final List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : local.entrySet()) {
+            final Entry now = e.getValue();
+            final Entry previous = manifest.get(e.getKey());
+            if (previous != null && previous.type == now.type) {
+                if (now.type == Type.DIRECTORY) continue;
+                if (previous.size == now.size && previous.mtime == now.mtime) {
+                    now.hash = previous.hash;
+                    continue;
+                }
+                now.hash = hash(e.getKey(), now);
+                if (now.hash.equals(previous.hash)) continue;
+            } else if (now.type != Type.DIRECTORY) {
+                now.hash = hash(e.getKey(), now);
+            }
+            changed.add(e.getKey());
+        }
+        return changed;
+    }
+
+    /**
+     * @return local files and directories, by path relative to source, parents first
+     */
+    Map<String, Entry> scan() throws IOException {
+        final Map<String, Entry> files = new TreeMap<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(source)) {
+                    files.put(relative(dir), new Entry(Type.DIRECTORY, 0, 0));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                final Type type = attrs.isSymbolicLink() ? Type.SYMLINK : attrs.isRegularFile() ? Type.FILE : null;
+                if (type != null) {
+                    files.put(relative(file), new Entry(type, attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private String relative(Path p) {
+        final StringBuilder s = new StringBuilder();
+        for (Path segment : source.relativize(p)) {
+            if (s.length() > 0) s.append('/');
+            s.append(segment);
+        }
+        return s.toString();
+    }
+
+    /**
+     * SHA-256 of file content, or of link target for a symbolic link.
+     */
+    private String hash(String path, Entry entry) throws IOException {
+        final Path file = source.resolve(path);
+        if (entry.type == Type.SYMLINK) {
+            return Sha256.hex(Sha256.digest().digest(Files.readSymbolicLink(file).toString().getBytes(UTF_8)));
+        }
+        return Sha256.hash(file);
+    }
+
+    /**
+     * Record local files as synced.
+     */
+    void commit(Map<String, Entry> local) {
+        manifest = local;
+    }
+
+    private void delete(List<String> paths) throws IOException {
+        final List<String> rm = Arrays.asList("rm", "-rf", "--");
+        List<String> cmd = new ArrayList<>(rm);
+        int length = 0;
+        for (String path : paths) {
+            final String p = target + "/" + path;
+            if (length + p.length() > MAX_ARGS_LENGTH && cmd.size() > rm.size()) {
+                exec(cmd);
+                cmd = new ArrayList<>(rm);
+                length = 0;
+            }
+            cmd.add(p);
+            length += p.length() + 1;
+        }
+        exec(cmd);
+    }
+
+    private void exec(List<String> cmd) throws IOException {
+        final String id = client.containerExec(container, new ExecConfig().cmd(cmd).attachStdout(true).attachStderr(true));
+        final StringBuilder stderr = new StringBuilder();
+        final Streams streams = client.execStart(id, false, false);
+        try {
+            final DockerMultiplexedFrameReader frames = streams.frames();
+            while (frames.next()) {
+                if (frames.getStreamType() == DockerMultiplexedFrameReader.StreamType.STDERR) {
+                    stderr.append(UTF_8.decode(frames.getPayload()));
+                }
+            }
+        } finally {
+            try {
+                streams.close();
+            } catch (Exception e) {
+                // ignored
+            }
+        }
+        final Integer exitCode = client.execInspect(id).getExitCode();
+        if (exitCode == null || exitCode != 0) {
+            throw new IOException("Failed to delete files in container " + container + ": " + stderr);
+        }
+    }
+
+    /**
+     * Save manifest, so a later sync from another process only sends changes.
+     */
+    public synchronized void save(Path file) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, UTF_8)) {
+            w.write(mtime == null ? "-" : mtime);
+            w.newLine();
+            for (Map.Entry<String, Entry> e : manifest.entrySet()) {
+                final Entry entry = e.getValue();
+                w.write(entry.type.name() + ' ' + entry.size + ' ' + entry.mtime + ' ' + entry.hash + ' ' + e.getKey());
+                w.newLine();
+            }
+        }
+    }
+
+    /**
+     * Load a manifest written by {@link #save(Path)} for the same container directory.
+     */
+    public synchronized void load(Path file) throws IOException {
+        final Map<String, Entry> entries = new HashMap<>();
+        try (BufferedReader r = Files.newBufferedReader(file, UTF_8)) {
+            final String first = r.readLine();
+            String line;
+            while ((line = r.readLine()) != null) {
+                final String[] s = line.split(" ", 5);
+                if (s.length != 5) throw new IOException("Invalid manifest line: " + line);
+                final Entry entry = new Entry(Type.valueOf(s[0]), Long.parseLong(s[1]), Long.parseLong(s[2]));
+                entry.hash = "null".equals(s[3]) ? null : s[3];
+                entries.put(s[4], entry);
+            }
+            mtime = first == null || first.equals("-") ? null : first;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid manifest " + file, e);
+        }
+        manifest = entries;
+    }
+
+    enum Type { FILE, DIRECTORY, SYMLINK }
+
+    static class Entry {
+        final Type type;
+        final long size;
+        /** nanoseconds since epoch */
+        final long mtime;
+        String hash;
+
+        Entry(Type type, long size, long mtime) {
+            this.type = type;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    public static class Result {
+
+        private final int sent;
+        private final int deleted;
+        private final long bytes;
+
+        Result(int sent, int deleted, long bytes) {
+            this.sent = sent;
+            this.deleted = deleted;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return number of files and directories sent to container
+         */
+        public int getSent() {
+            return sent;
+        }
+
+        /**
+         * @return number of files and directories deleted in container
+         */
+        public int getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return size of files sent
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return sent + " sent (" + bytes + " bytes), " + deleted + " deleted";
+        }
+    }
+}
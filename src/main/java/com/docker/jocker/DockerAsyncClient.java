@@ -0,0 +1,395 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.HttpResponseDecoder;
+import com.docker.jocker.io.SelectorLoop;
+import com.docker.jocker.model.*;
+import com.google.gson.Gson;
+import jnr.enxio.channels.NativeSelectorProvider;
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Non-blocking flavor of {@link DockerClient}. Requests are multiplexed on a few {@link SelectorLoop} threads, so
+ * thousands of in-flight calls or long-running streams don't require as many threads.
+ * <p>
+ * Results are delivered as {@link CompletableFuture}, completed on a selector thread. Stream consumers are also
+ * invoked on selector thread, and as such must not block.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class DockerAsyncClient implements Closeable {
+
+    private final URI uri;
+    private final String host;
+    private final Gson gson;
+    private final SelectorLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+    private final String version;
+
+    public DockerAsyncClient(String dockerHost) throws IOException {
+        this(dockerHost, java.lang.Runtime.getRuntime().availableProcessors());
+    }
+
+    public DockerAsyncClient(String dockerHost, int selectorThreads) throws IOException {
+        this.uri = URI.create(dockerHost);
+        this.gson = HttpRestClient.createGson();
+        final SelectorProvider provider;
+        if (isUnix()) {
+            this.host = "docker";
+            provider = NativeSelectorProvider.getInstance();
+        } else {
+            this.host = uri.getHost();
+            provider = SelectorProvider.provider();
+        }
+        this.loops = new SelectorLoop[selectorThreads];
+        for (int i = 0; i < selectorThreads; i++) {
+            loops[i] = new SelectorLoop(provider, "docker-selector-" + i);
+        }
+        version = join(version()).getApiVersion();
+    }
+
+    public CompletableFuture<SystemVersion> version() {
+        return call("GET", "/version", SystemVersion.class);
+    }
+
+    public CompletableFuture<SystemInfo> info() {
+        return call("GET", "/v" + version + "/info", SystemInfo.class);
+    }
+
+    /**
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ContainerList
+     */
+    public CompletableFuture<ContainerSummary> containerList(boolean all, int limit, boolean size, ContainersFilters filters) {
+        Request req = Request("/v", version, "/containers/json")
+                .query("all", all)
+                .query("size", size)
+                .query("filters", filters != null ? gson.toJson(filters) : null)
+                .query("limit", limit);
+        return call("GET", req.toString(), ContainerSummary.class);
+    }
+
+    /**
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ContainerInspect
+     */
+    public CompletableFuture<ContainerInspectResponse> containerInspect(String container) {
+        Request req = Request("/v", version, "/containers/", container, "/json");
+        return call("GET", req.toString(), ContainerInspectResponse.class);
+    }
+
+    /**
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ContainerWait
+     */
+    public CompletableFuture<ContainerWaitResponse> containerWait(String container, WaitCondition condition) {
+        Request req = Request("/v", version, "/containers/", container, "/wait")
+                .query("condition", condition.getValue());
+        return call("POST", req.toString(), ContainerWaitResponse.class);
+    }
+
+    /**
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ImageInspect
+     */
+    public CompletableFuture<Image> imageInspect(String image) {
+        Request req = Request("/v", version, "/images/", image, "/json");
+        return call("GET", req.toString(), Image.class);
+    }
+
+    /**
+     * see https://docs.docker.com/engine/api/v1.40/#operation/SystemEvents
+     * @return a future completed when stream ends, or consumer returns <code>true</code>. Cancelling the future
+     * closes the stream.
+     */
+    public CompletableFuture<Void> events(EventsFilters filters, String since, String until, DockerClient.EventConsumer consumer) {
+        Request req = Request("/v", version, "/events")
+                .query("filters", filters)
+                .query("since", since)
+                .query("until", until);
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        new Exchange("GET", req.toString(), future) {
+            // events are sent as a stream of JSON documents, one per line
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+            @Override
+            void content(ByteBuffer data) throws IOException {
+                while (data.hasRemaining() && !future.isDone()) {
+                    int eol = data.position();
+                    while (eol < data.limit() && data.get(eol) != '\n') eol++;
+                    if (eol == data.limit()) {
+                        write(line, data);
+                        return;
+                    }
+                    final int limit = data.limit();
+                    data.limit(eol);
+                    write(line, data);
+                    data.limit(limit);
+                    data.position(eol + 1);
+                    if (line.size() > 0) {
+                        final SystemEventsResponse event = gson.fromJson(line.toString(UTF_8.name()), SystemEventsResponse.class);
+                        line.reset();
+                        if (consumer.accept(event)) {
+                            future.complete(null);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            void done() {
+                future.complete(null);
+            }
+        }.start();
+        return future;
+    }
+
+    /**
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ContainerLogs
+     * @param consumer receive raw log stream, which is multiplexed if container has no TTY. Buffer is only valid
+     *                 during invocation.
+     */
+    public CompletableFuture<Void> containerLogs(String container, boolean follow, boolean stdout, boolean stderr, boolean timestamps, int since, String tail, Consumer<ByteBuffer> consumer) {
+        Request req = Request("/v", version, "/containers/", container, "/logs")
+                .query("follow", follow)
+                .query("stdout", stdout)
+                .query("stderr", stderr)
+                .query("timestamps", timestamps)
+                .query("since", since)
+                .query("tail", tail);
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        new Exchange("GET", req.toString(), future) {
+            @Override
+            void content(ByteBuffer data) {
+                consumer.accept(data);
+            }
+
+            @Override
+            void done() {
+                future.complete(null);
+            }
+        }.start();
+        return future;
+    }
+
+    private <T> CompletableFuture<T> call(String method, String path, Class<T> type) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        new Exchange(method, path, future) {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+            @Override
+            void content(ByteBuffer data) {
+                write(body, data);
+            }
+
+            @Override
+            void done() throws IOException {
+                future.complete(gson.fromJson(body.toString(UTF_8.name()), type));
+            }
+        }.start();
+        return future;
+    }
+
+    /**
+     * A single HTTP request/response on a dedicated non-blocking connection.
+     */
+    private abstract class Exchange implements SelectorLoop.Handler, HttpResponseDecoder.Listener {
+
+        private final SelectorLoop loop;
+        private final ByteBuffer request;
+        private final HttpResponseDecoder decoder = new HttpResponseDecoder(this);
+        private final CompletableFuture<?> future;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private int status;
+        private String contentType;
+        private ByteArrayOutputStream error;
+
+        Exchange(String method, String path, CompletableFuture<?> future) {
+            this.loop = loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+            this.future = future;
+            final StringBuilder sb = new StringBuilder()
+                    .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(host).append("\r\n");
+            if ("POST".equals(method)) {
+                sb.append("Content-Length: 0\r\n");
+            }
+            sb.append("\r\n");
+            this.request = ByteBuffer.wrap(sb.toString().getBytes(UTF_8));
+        }
+
+        void start() {
+            try {
+                channel = isUnix() ? UnixSocketChannel.open() : SocketChannel.open();
+                channel.configureBlocking(false);
+                final boolean connected = channel.connect(address());
+                loop.register(channel, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                close();
+                future.completeExceptionally(e);
+                return;
+            }
+            future.whenComplete((r, t) -> {
+                if (future.isCancelled()) loop.execute(this::close);
+            });
+        }
+
+        abstract void content(ByteBuffer data) throws IOException;
+
+        abstract void done() throws IOException;
+
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+            this.key = key;
+            if (future.isDone()) {
+                close();
+                return;
+            }
+            if (key.isConnectable()) {
+                if (channel.finishConnect()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+            } else if (key.isWritable()) {
+                channel.write(request);
+                if (!request.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                final ByteBuffer buffer = loop.buffer();
+                if (channel.read(buffer) < 0) {
+                    close();
+                    decoder.eof();
+                    return;
+                }
+                buffer.flip();
+                if (decoder.decode(buffer) || future.isDone()) {
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void headers(int status, Map<String, String> headers) {
+            this.status = status;
+            this.contentType = headers.get("Content-Type");
+            if (status / 100 > 2) {
+                error = new ByteArrayOutputStream();
+            }
+        }
+
+        @Override
+        public void body(ByteBuffer data) throws IOException {
+            if (error != null) {
+                write(error, data);
+            } else {
+                content(data);
+            }
+        }
+
+        @Override
+        public void complete() throws IOException {
+            if (error == null) {
+                done();
+                return;
+            }
+            String message = String.valueOf(status);
+            if (contentType != null && contentType.startsWith("application/json")) {
+                message = gson.fromJson(error.toString(UTF_8.name()), ErrorDetail.class).getMessage();
+            }
+            if (status == 404) {
+                future.completeExceptionally(new NotFoundException(message));
+            } else if (status == 409) {
+                future.completeExceptionally(new ConflictException(message));
+            } else {
+                future.completeExceptionally(new HttpStatusException(status, message));
+            }
+        }
+
+        @Override
+        public void failed(Throwable cause) {
+            future.completeExceptionally(cause);
+        }
+
+        private void close() {
+            if (key != null) {
+                SelectorLoop.close(key);
+            } else if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    private static void write(ByteArrayOutputStream out, ByteBuffer data) {
+        out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        data.position(data.limit());
+    }
+
+    private boolean isUnix() {
+        return "unix".equals(uri.getScheme());
+    }
+
+    private SocketAddress address() {
+        if (isUnix()) {
+            return new UnixSocketAddress(new File(uri.getPath()));
+        }
+        return new InetSocketAddress(host, uri.getPort());
+    }
+
+    /**
+     * Wait for a future to complete, unwrapping failure cause.
+     */
+    static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (SelectorLoop loop : loops) {
+            loop.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DockerAsyncClient{");
+        sb.append("version='").append(version).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private Request Request(String ... strings)  {
+        return new Request(gson, strings);
+    }
+}
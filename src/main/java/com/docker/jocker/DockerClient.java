@@ -1,20 +1,26 @@
 package com.docker.jocker;
 
 
+import com.docker.jocker.io.BuildContext;
 import com.docker.jocker.io.ChunkedInputStream;
+import com.docker.jocker.io.DockerMultiplexedFrameReader;
 import com.docker.jocker.io.DockerMultiplexedInputStream;
+import com.docker.jocker.io.LogLineDecoder;
+import com.docker.jocker.io.ParallelGzipOutputStream;
+import com.docker.jocker.io.TarArchive;
+import com.docker.jocker.io.TarEntryFinder;
+import com.docker.jocker.io.TarExtractor;
 import com.docker.jocker.model.*;
+import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
-import org.apache.commons.compress.archivers.ArchiveEntry;
+import com.google.gson.stream.JsonToken;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.utils.IOUtils;
+import org.reactivestreams.Publisher;
 
 import javax.net.ssl.SSLContext;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -22,14 +28,23 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
-import java.util.zip.GZIPOutputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -40,26 +55,75 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  */
 public class DockerClient extends HttpRestClient {
 
+    /**
+     * Compression of archives sent to daemon.
+     */
+    public enum Compression {
+        NONE,
+        /** gzip, using all cores, see {@link ParallelGzipOutputStream} */
+        GZIP,
+        /** gzip over network, but not on local unix socket, where CPU matters more than bytes */
+        AUTO
+    }
+
+    /** label set on images built from a {@link BuildContext}, with digest of context and build parameters */
+    public static final String BUILD_DIGEST_LABEL = "com.docker.jocker.build.digest";
+
     private String version;
-    
+
+    private Compression compression = Compression.AUTO;
+
     public DockerClient(String dockerHost) throws IOException {
         this(dockerHost, null);
     }
 
     public DockerClient(String dockerHost, SSLContext ssl) throws IOException {
-        super(URI.create(dockerHost), ssl);
+        this(dockerHost, ssl, ConnectionPool.DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param maxIdle maximum number of idle keep-alive connections retained to the daemon, this doesn't limit
+     *                the number of concurrent connections
+     */
+    public DockerClient(String dockerHost, SSLContext ssl, int maxIdle) throws IOException {
+        super(URI.create(dockerHost), ssl, maxIdle);
         version = version().getApiVersion();
     }
 
+    /**
+     * Set compression of archives built by client, like {@link TarArchive}. Default is {@link Compression#AUTO}.
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    private boolean compress() {
+        return compression == Compression.GZIP || compression == Compression.AUTO && !"unix".equals(uri.getScheme());
+    }
+
+    /**
+     * Archive written on the fly, compressed according to {@link #setCompression(Compression)}.
+     */
+    private HttpRestClient.Payload payload(TarArchive archive) {
+        if (!compress()) {
+            return archive::writeTo;
+        }
+        return out -> {
+            final ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out);
+            archive.writeTo(gzip);
+            gzip.finish();
+        };
+    }
+
     public SystemVersion version() throws IOException {
         try (HttpRestClient.Response r = doGET("/version")) {
-            return gson.fromJson(r.readBody(), SystemVersion.class);
+            return readBody(r, SystemVersion.class);
         }
     }
 
     public SystemInfo info() throws IOException {
         try (HttpRestClient.Response r = doGET("/v"+version+"/info")) {
-            return gson.fromJson(r.readBody(), SystemInfo.class);
+            return readBody(r, SystemInfo.class);
         }
     }
 
@@ -74,15 +138,32 @@ public class DockerClient extends HttpRestClient {
      * see https://docs.docker.com/engine/api/v1.40/#operation/ContainerList
      */
     public ContainerSummary containerList(boolean all, int limit, boolean size, String filters) throws IOException {
-        Request req = Request("/v", version, "/containers/json")
+        try (HttpRestClient.Response r = doGET(containerListRequest(all, limit, size, filters))) {
+            return readBody(r, ContainerSummary.class);
+        }
+    }
+
+    public ContainerSummary containerList(boolean all, int limit, boolean size, ContainersFilters filters, Set<String> fields) throws IOException {
+        return containerList(all, limit, size, gson.toJson(filters), fields);
+    }
+
+    /**
+     * List containers, only decoding the wanted <code>fields</code>, named after API attributes (<code>Id</code>,
+     * <code>Names</code>, <code>State</code>...). Other attributes are skipped while reading and left <code>null</code>.
+     */
+    public ContainerSummary containerList(boolean all, int limit, boolean size, String filters, Set<String> fields) throws IOException {
+        try (HttpRestClient.Response r = doGET(containerListRequest(all, limit, size, filters))) {
+            return readBody(r, ContainerSummary.class, fields);
+        }
+    }
+
+    private String containerListRequest(boolean all, int limit, boolean size, String filters) {
+        return Request("/v", version, "/containers/json")
             .query("all", all)
             .query("size", size)
             .query("filters", filters)
-            .query("limit", limit);
-
-        try (HttpRestClient.Response r = doGET(req.toString())) {
-            return gson.fromJson(r.readBody(), ContainerSummary.class);
-        }
+            .query("limit", limit)
+            .toString();
     }
 
     /**
@@ -90,25 +171,37 @@ public class DockerClient extends HttpRestClient {
      * see https://docs.docker.com/engine/api/v1.40/#operation/PutContainerArchive
      */
     public void putContainerArchive(String container, String path, boolean noOverwriteDirNonDir, byte[] tar) throws IOException {
-        Request req = Request("/v", version, "/containers/", container, "/archive")
-            .query("path", path)
-            .query("noOverwriteDirNonDir", noOverwriteDirNonDir);
+        try (HttpRestClient.Response r = doPUT(putContainerArchiveRequest(container, path, noOverwriteDirNonDir), tar)) {}
+    }
 
-        try (HttpRestClient.Response r = doPUT(req.toString(), tar)) {}
+    /**
+     * Stream a tar archive, optionally compressed, to container. Archive is sent with chunked transfer encoding as it
+     * is read, so it doesn't need to be loaded in memory.
+     */
+    public void putContainerArchive(String container, String path, boolean noOverwriteDirNonDir, InputStream tar) throws IOException {
+        try (HttpRestClient.Response r = doPUT(putContainerArchiveRequest(container, path, noOverwriteDirNonDir),
+                "application/x-tar", -1, out -> IOUtils.copy(tar, out))) {}
+    }
+
+    /**
+     * Copy files and directories to container. Archive is built from disk while sent, so memory used doesn't depend on
+     * files size. Uncompressed archive is sent with a precomputed Content-Length, compressed one is chunked.
+     */
+    public void putContainerArchive(String container, String path, boolean noOverwriteDirNonDir, TarArchive archive) throws IOException {
+        try (HttpRestClient.Response r = doPUT(putContainerArchiveRequest(container, path, noOverwriteDirNonDir),
+                "application/x-tar", compress() ? -1 : archive.length(), payload(archive))) {}
     }
 
-    /** Helper method to put a single file inside container */
+    private String putContainerArchiveRequest(String container, String path, boolean noOverwriteDirNonDir) {
+        return Request("/v", version, "/containers/", container, "/archive")
+            .query("path", path)
+            .query("noOverwriteDirNonDir", noOverwriteDirNonDir)
+            .toString();
+    }
+
+    /** Helper method to put a single file, or a directory with all its content, inside container */
     public void putContainerFile(String container, String path, boolean noOverwriteDirNonDir, File file) throws IOException {
-        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try (GZIPOutputStream gz = new GZIPOutputStream(bos);
-             TarArchiveOutputStream tar = new TarArchiveOutputStream(gz);
-             InputStream in = new FileInputStream(file)) {
-            final ArchiveEntry entry = tar.createArchiveEntry(file, file.getName());
-            tar.putArchiveEntry(entry);
-            IOUtils.copy(in, tar);
-            tar.closeArchiveEntry();
-        }
-        putContainerArchive(container, path, noOverwriteDirNonDir, bos.toByteArray());
+        putContainerArchive(container, path, noOverwriteDirNonDir, new TarArchive().add(file.toPath()));
     }
 
     /**
@@ -120,7 +213,7 @@ public class DockerClient extends HttpRestClient {
 
         String spec = gson.toJson(containerSpec);
         try (HttpRestClient.Response r = doPOST(req.toString(), spec)) {
-            return gson.fromJson(r.readBody(), ContainerCreateResponse.class);
+            return readBody(r, ContainerCreateResponse.class);
         }
     }
 
@@ -166,7 +259,7 @@ public class DockerClient extends HttpRestClient {
     public ContainerChangeResponseItem[] containerChanges(String container, boolean stream) throws IOException {
         Request req = Request("/v", version, "/containers/", container, "/changes");
         try (HttpRestClient.Response r = doGET(req.toString())) {
-            return gson.fromJson(r.readBody(), ContainerChangeResponseItem[].class);
+            return readBody(r, ContainerChangeResponseItem[].class);
         }
     }
 
@@ -217,10 +310,37 @@ public class DockerClient extends HttpRestClient {
         Request req = Request("/v", version, "/containers/", container, "/wait")
                 .query("condition", condition.getValue());
         try (HttpRestClient.Response r = doPOST(req.toString())) {
-            return gson.fromJson(r.readBody(), ContainerWaitResponse.class);
+            return readBody(r, ContainerWaitResponse.class);
         }
     }
 
+    /**
+     * Wait for many containers to stop using a single events stream, see {@link ContainerWaiter}.
+     * @return futures by container ID or name, as passed in <code>containers</code>
+     */
+    public Map<String, CompletableFuture<ContainerWaitResponse>> containerWait(Collection<String> containers) throws IOException {
+        final ContainerWaiter waiter = new ContainerWaiter(this);
+        final Map<String, CompletableFuture<ContainerWaitResponse>> futures = new LinkedHashMap<>();
+        try {
+            waiter.start();
+            for (String container : containers) {
+                futures.put(container, waiter.waitFor(container));
+            }
+        } catch (IOException | RuntimeException e) {
+            waiter.close();
+            throw e;
+        }
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .whenComplete((r, e) -> {
+                    try {
+                        waiter.close();
+                    } catch (IOException ignored) {
+                        // events stream already closed
+                    }
+                });
+        return futures;
+    }
+
     /**
      * see https://docs.docker.com/engine/api/v1.40/#operation/ContainerDelete
      */
@@ -233,16 +353,103 @@ public class DockerClient extends HttpRestClient {
         try (HttpRestClient.Response r = doDELETE(req.toString())) {}
     }
 
+    /**
+     * @return log stream, for caller to read and close
+     */
     public InputStream containerLogs(String container, boolean follow, boolean stdout, boolean stderr, boolean timestamps, int since, String tail) throws IOException {
-        Request req = Request("/v", version, "/containers/", container, "/logs")
+        HttpRestClient.Response r = doGET(containerLogsRequest(container, follow, stdout, stderr, timestamps, since, tail));
+        return r.openStream();
+    }
+
+    /**
+     * Write container logs to a local file, as received from daemon, i.e. multiplexed if container has no TTY.
+     * Returns when log stream ends, so when container stops if <code>follow</code> is set.
+     * @return number of bytes written
+     */
+    public long containerLogs(String container, boolean follow, boolean stdout, boolean stderr, boolean timestamps, int since, String tail, Path target) throws IOException {
+        try (HttpRestClient.Response<?> r = doGET(containerLogsRequest(container, follow, stdout, stderr, timestamps, since, tail))) {
+            return transferTo(r, target);
+        }
+    }
+
+    /**
+     * Line-oriented flavor of {@link #containerLogs(String, boolean, boolean, boolean, boolean, int, String)}, see
+     * {@link LogLineDecoder}. Returns when log stream ends, so when container stops if <code>follow</code> is set.
+     */
+    public void containerLogs(String container, boolean follow, boolean stdout, boolean stderr, boolean timestamps, int since, String tail, LogLineDecoder.LineConsumer consumer) throws IOException {
+        final LogLineDecoder decoder = new LogLineDecoder(isMultiplexed(container), timestamps, consumer);
+        try (HttpRestClient.Response r = doGET(containerLogsRequest(container, follow, stdout, stderr, timestamps, since, tail))) {
+            final InputStream in = r.getBody();
+            final byte[] buffer = new byte[32 * 1024];
+            final ByteBuffer data = ByteBuffer.wrap(buffer);
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                data.limit(read).position(0);
+                decoder.decode(data);
+            }
+        }
+        decoder.flush();
+    }
+
+    /**
+     * Reactive flavor of {@link #containerLogs(String, boolean, boolean, boolean, boolean, int, String, LogLineDecoder.LineConsumer)},
+     * see {@link StreamPublisher}.
+     */
+    public Publisher<LogAggregator.LogLine> containerLogsPublisher(String container, boolean follow, boolean stdout, boolean stderr, boolean timestamps, int since, String tail) {
+        return new StreamPublisher<>(() -> {
+            final ArrayDeque<LogAggregator.LogLine> lines = new ArrayDeque<>();
+            final LogLineDecoder decoder = new LogLineDecoder(isMultiplexed(container), timestamps, (stream, timestamp, line) -> {
+                final byte[] content = new byte[line.remaining()];
+                line.get(content);
+                lines.add(new LogAggregator.LogLine(container, stream, timestamp, content, System.nanoTime()));
+            });
+            final HttpRestClient.Response<?> r = doGET(containerLogsRequest(container, follow, stdout, stderr, timestamps, since, tail));
+            return new StreamPublisher.Source<LogAggregator.LogLine>() {
+                final byte[] buffer = new byte[32 * 1024];
+                final ByteBuffer data = ByteBuffer.wrap(buffer);
+                boolean eof;
+
+                @Override
+                public LogAggregator.LogLine next() throws IOException {
+                    // only read from daemon when all lines already received have been consumed
+                    while (lines.isEmpty() && !eof) {
+                        final int read = r.getBody().read(buffer);
+                        if (read < 0) {
+                            eof = true;
+                            decoder.flush();
+                        } else {
+                            data.limit(read).position(0);
+                            decoder.decode(data);
+                        }
+                    }
+                    return lines.poll();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    r.close();
+                }
+            };
+        });
+    }
+
+    /**
+     * API 1.40 uses same content-type for raw and multiplexed log streams, so we need to check container has a TTY.
+     */
+    private boolean isMultiplexed(String container) throws IOException {
+        final ContainerConfig config = containerInspect(container).getConfig();
+        return config == null || !Boolean.TRUE.equals(config.isTty());
+    }
+
+    private String containerLogsRequest(String container, boolean follow, boolean stdout, boolean stderr, boolean timestamps, int since, String tail) {
+        return Request("/v", version, "/containers/", container, "/logs")
                 .query("follow", follow)
                 .query("stdout", stdout)
                 .query("stderr", stderr)
+                .query("timestamps", timestamps)
                 .query("since", since)
-                .query("tail", tail);
-
-        HttpRestClient.Response r = doGET(req.toString());
-        return r.getBody();
+                .query("tail", tail)
+                .toString();
     }
 
     public Streams containerAttach(String id, boolean stdin, boolean stdout, boolean stderr, boolean stream, boolean logs, String detachKeys, boolean tty) throws IOException {
@@ -277,6 +484,15 @@ public class DockerClient extends HttpRestClient {
                 }
             }
 
+            @Override
+            public DockerMultiplexedFrameReader frames() throws IOException {
+                if (!tty) {
+                    return ((DockerMultiplexedInputStream) streamOut).frames();
+                } else {
+                    throw new IOException("stream is not multiplexed");
+                }
+            }
+
             @Override
             public OutputStream stdin() throws IOException {
                 if (!stdin) throw new IOException("stdin is not attached");
@@ -295,7 +511,7 @@ public class DockerClient extends HttpRestClient {
      */
     public ContainerInspectResponse containerInspect(String container) throws IOException {
         try (HttpRestClient.Response r = doGET("/v"+version+"/containers/"+container+"/json")) {
-            return gson.fromJson(r.readBody(), ContainerInspectResponse.class);
+            return readBody(r, ContainerInspectResponse.class);
         }
     }
 
@@ -306,7 +522,7 @@ public class DockerClient extends HttpRestClient {
         Request req = Request("/v", version, "/containers/", container, "/exec");
         String spec = gson.toJson(execConfig);
         try (HttpRestClient.Response r = doPOST(req.toString(), spec)) {
-            return gson.fromJson(r.readBody(), IdResponse.class).getId();
+            return readBody(r, IdResponse.class).getId();
         }
     }
 
@@ -332,7 +548,106 @@ public class DockerClient extends HttpRestClient {
         Request req = Request("/v", version, "/containers/", container, "/archive")
                 .query("path", path);
         HttpRestClient.Response r = doGET(req.toString());
-        return new TarArchiveInputStream(r.getBody());
+        return new TarArchiveInputStream(r.openStream());
+    }
+
+    /**
+     * Write archive of <code>path</code> in container to a local file.
+     * @return archive size
+     */
+    public long containerArchive(String container, String path, Path target) throws IOException {
+        Request req = Request("/v", version, "/containers/", container, "/archive")
+                .query("path", path);
+        try (HttpRestClient.Response<?> r = doGET(req.toString())) {
+            return transferTo(r, target);
+        }
+    }
+
+    /**
+     * Extract archive of <code>path</code> in container to a local directory, with files written in parallel, see
+     * {@link TarExtractor}. Like <code>docker cp</code>, directory content is extracted in a directory named after
+     * <code>path</code> base name.
+     */
+    public TarExtractor.Result containerArchive(String container, String path, TarExtractor extractor) throws IOException {
+        Request req = Request("/v", version, "/containers/", container, "/archive")
+                .query("path", path);
+        try (HttpRestClient.Response<?> r = doGET(req.toString())) {
+            return extractor.extract(r.getBody());
+        }
+    }
+
+    /**
+     * Read a few files from archive of <code>path</code> in container, typically a directory. Archive is only scanned
+     * up to the last file found: content of other entries is skipped, and connection is closed as soon as all files
+     * have been found.
+     * @param files paths relative to <code>path</code>
+     * @param handler called for each file found, with archive entry, named after <code>path</code> base name
+     * @return files which haven't been found
+     */
+    public Set<String> containerArchive(String container, String path, Collection<String> files, TarEntryFinder.Handler handler) throws IOException {
+        String base = path;
+        while (base.endsWith("/")) base = base.substring(0, base.length() - 1);
+        base = base.substring(base.lastIndexOf('/') + 1);
+        final String prefix = base.isEmpty() ? "" : base + "/";
+
+        final List<String> names = new ArrayList<>();
+        for (String file : files) {
+            names.add(prefix + TarEntryFinder.normalize(file));
+        }
+        Request req = Request("/v", version, "/containers/", container, "/archive")
+                .query("path", path);
+        final Set<String> missing = new LinkedHashSet<>();
+        // closed before end of body, connection is discarded rather than drained
+        try (HttpRestClient.Response<?> r = doGET(req.toString())) {
+            for (String name : new TarEntryFinder(names).find(r.getBody(), handler)) {
+                missing.add(name.substring(prefix.length()));
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Extract a single file from archive of <code>path</code> in container, see
+     * {@link #containerArchive(String, String, Collection, TarEntryFinder.Handler)}.
+     * @param file path relative to <code>path</code>
+     * @param target channel file content is written to, from its current position
+     * @return <code>false</code> if file wasn't found
+     */
+    public boolean containerArchive(String container, String path, String file, FileChannel target) throws IOException {
+        return containerArchive(container, path, Collections.singleton(file),
+                (entry, content) -> TarEntryFinder.transferTo(content, target)).isEmpty();
+    }
+
+    /**
+     * Export container filesystem as a tarball, for caller to read and close.
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ContainerExport
+     */
+    public InputStream containerExport(String container) throws IOException {
+        HttpRestClient.Response r = doGET(containerExportRequest(container));
+        return r.openStream();
+    }
+
+    /**
+     * Export container filesystem as a tarball to a local file.
+     * @return tarball size
+     */
+    public long containerExport(String container, Path target) throws IOException {
+        try (HttpRestClient.Response<?> r = doGET(containerExportRequest(container))) {
+            return transferTo(r, target);
+        }
+    }
+
+    private String containerExportRequest(String container) {
+        return Request("/v", version, "/containers/", container, "/export").toString();
+    }
+
+    /**
+     * Write response body to <code>target</code> file, replacing existing content.
+     */
+    private long transferTo(HttpRestClient.Response<?> r, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return r.transferTo(channel);
+        }
     }
 
     /**
@@ -342,7 +657,7 @@ public class DockerClient extends HttpRestClient {
         Request req = Request("/v", version, "/containers/prune")
                 .query("filters", gson.toJson(filters));
         try (HttpRestClient.Response r = doPOST(req.toString())) {
-            return gson.fromJson(r.readBody(), ContainerPruneResponse.class);
+            return readBody(r, ContainerPruneResponse.class);
         }
     }
 
@@ -379,6 +694,11 @@ public class DockerClient extends HttpRestClient {
                 stream.redirectStderr(stderr);
             }
 
+            @Override
+            public DockerMultiplexedFrameReader frames() {
+                return stream.frames();
+            }
+
             @Override
             public void close() throws Exception {
                 socket.close();
@@ -392,31 +712,161 @@ public class DockerClient extends HttpRestClient {
     public ExecInspectResponse execInspect(String id) throws IOException {
         Request req = Request("/v", version, "/exec/", id, "/json");
         try (HttpRestClient.Response r = doGET(req.toString())) {
-            return gson.fromJson(r.readBody(), ExecInspectResponse.class);
+            return readBody(r, ExecInspectResponse.class);
         }
     }
 
 
+    /**
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ImageList
+     */
+    public List<ImageSummary> imageList(boolean all, boolean digests, String filters) throws IOException {
+        try (HttpRestClient.Response r = doGET(imageListRequest(all, digests, filters))) {
+            return readBody(r, ImageList.class);
+        }
+    }
+
+    /**
+     * List images, only decoding the wanted <code>fields</code>, named after API attributes (<code>Id</code>,
+     * <code>RepoTags</code>, <code>Size</code>...). Other attributes are skipped while reading and left <code>null</code>.
+     */
+    public List<ImageSummary> imageList(boolean all, boolean digests, String filters, Set<String> fields) throws IOException {
+        try (HttpRestClient.Response r = doGET(imageListRequest(all, digests, filters))) {
+            return readBody(r, ImageList.class, fields);
+        }
+    }
+
+    private String imageListRequest(boolean all, boolean digests, String filters) {
+        return Request("/v", version, "/images/json")
+                .query("all", all)
+                .query("digests", digests)
+                .query("filters", filters)
+                .toString();
+    }
+
     /**
      * "pull" flavor of ImageCreate
      * see https://docs.docker.com/engine/api/v1.40/#operation/ImageCreate
      */
     public void imagePull(String image, String tag, AuthConfig authentication, Consumer<CreateImageInfo> consumer) throws IOException {
-        if (tag == null) tag = "latest";
-        Request req = Request("/v", version, "/images/create")
+        progress(doPOST(imagePullRequest(image, tag), "", registryAuth(authentication)), CreateImageInfo.class, consumer);
+    }
+
+    /**
+     * Reactive flavor of {@link #imagePull(String, String, AuthConfig, Consumer)}, see {@link StreamPublisher}.
+     */
+    public Publisher<CreateImageInfo> imagePullPublisher(String image, String tag, AuthConfig authentication) {
+        return new StreamPublisher<>(() ->
+                jsonStream(doPOST(imagePullRequest(image, tag), "", registryAuth(authentication)), CreateImageInfo.class));
+    }
+
+    private String imagePullRequest(String image, String tag) {
+        return Request("/v", version, "/images/create")
                 .query("fromImage", image)
-                .query("tag", tag);
-        Map headers = new HashMap();
+                .query("tag", tag != null ? tag : "latest")
+                .toString();
+    }
+
+    private Map<String, String> registryAuth(AuthConfig authentication) {
+        final Map<String, String> headers = new HashMap<>();
         if (authentication != null) {
-            headers.put("X-Registry-Auth", Base64.getEncoder().encodeToString(gson.toJson(authentication).getBytes(UTF_8)));
+            headers.put("X-Registry-Auth", registryAuthHeader(authentication));
         }
-        try (HttpRestClient.Response<ChunkedInputStream> r = doPOST(req.toString(), "", headers);
-             final ChunkedInputStream body = r.getBody();
-             InputStreamReader reader = new InputStreamReader(body, UTF_8)) {
-            while (!body.isEof()) {
-                consumer.accept(gson.fromJson(new JsonReader(reader), CreateImageInfo.class));
-            }
+        return headers;
+    }
+
+    private String registryAuthHeader(AuthConfig authentication) {
+        return Base64.getEncoder().encodeToString(gson.toJson(authentication).getBytes(UTF_8));
+    }
+
+    /**
+     * Export an image and its parent layers as a tarball, for caller to read and close.
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ImageGet
+     */
+    public InputStream imageGet(String image) throws IOException {
+        return doGET(imageGetRequest(image)).openStream();
+    }
+
+    /**
+     * Save an image to a local tarball, streamed from socket to file through a direct buffer.
+     * @return tarball size
+     */
+    public long imageGet(String image, Path target) throws IOException {
+        try (HttpRestClient.Response<?> r = doGET(imageGetRequest(image))) {
+            return transferTo(r, target);
+        }
+    }
+
+    private String imageGetRequest(String image) {
+        return Request("/v", version, "/images/", image, "/get").toString();
+    }
+
+    /**
+     * Export several images as a single tarball, for caller to read and close.
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ImageGetAll
+     */
+    public InputStream imageGetAll(Collection<String> images) throws IOException {
+        return doGET(imageGetAllRequest(images)).openStream();
+    }
+
+    /**
+     * Save several images to a local tarball.
+     * @return tarball size
+     */
+    public long imageGetAll(Collection<String> images, Path target) throws IOException {
+        try (HttpRestClient.Response<?> r = doGET(imageGetAllRequest(images))) {
+            return transferTo(r, target);
+        }
+    }
+
+    private String imageGetAllRequest(Collection<String> images) {
+        final Request req = Request("/v", version, "/images/get");
+        for (String image : images) {
+            req.query("names", image);
         }
+        return req.toString();
+    }
+
+    /**
+     * Load images from a local tarball, as saved by {@link #imageGet(String, Path)}. Tarball is sent with its
+     * Content-Length, straight from file to socket, and load progress is decoded as it is received.
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ImageLoad
+     */
+    public void imageLoad(Path tarball, boolean quiet, Consumer<BuildInfo> consumer) throws IOException {
+        progress(doPOST(imageLoadRequest(quiet), tarball, imageLoadHeaders()), BuildInfo.class, consumer);
+    }
+
+    /**
+     * Load images from a tarball stream, sent with chunked transfer encoding.
+     */
+    public void imageLoad(InputStream tarball, boolean quiet, Consumer<BuildInfo> consumer) throws IOException {
+        progress(doPOST(imageLoadRequest(quiet), tarball, imageLoadHeaders()), BuildInfo.class, consumer);
+    }
+
+    private String imageLoadRequest(boolean quiet) {
+        return Request("/v", version, "/images/load")
+                .query("quiet", quiet)
+                .toString();
+    }
+
+    private Map<String, String> imageLoadHeaders() {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/x-tar");
+        return headers;
+    }
+
+    /**
+     * see https://docs.docker.com/engine/api/v1.40/#operation/ImageTag
+     * @param tag <code>repository[:tag]</code>
+     */
+    public void imageTag(String image, String tag) throws IOException {
+        final int colon = tag.lastIndexOf(':');
+        final boolean hasTag = colon > tag.lastIndexOf('/');
+        final String req = Request("/v", version, "/images/", image, "/tag")
+                .query("repo", hasTag ? tag.substring(0, colon) : tag)
+                .query("tag", hasTag ? tag.substring(colon + 1) : null)
+                .toString();
+        try (HttpRestClient.Response r = doPOST(req)) {}
     }
 
     /**
@@ -425,7 +875,7 @@ public class DockerClient extends HttpRestClient {
     public Image imageInspect(String image) throws IOException {
         Request req = Request("/v", version, "/images/", image, "/json");
         try (HttpRestClient.Response r = doGET(req.toString())) {
-            return gson.fromJson(r.readBody(), Image.class);
+            return readBody(r, Image.class);
         }
     }
 
@@ -434,14 +884,92 @@ public class DockerClient extends HttpRestClient {
      * @param buildImageRequest
      */
     public void imageBuild(BuildImageRequest buildImageRequest, AuthConfig authentication, InputStream context, Consumer<BuildInfo> consumer) throws IOException {
-        Request req = Request("/v", version, "/build")
+        progress(doPOST(imageBuildRequest(buildImageRequest), context, imageBuildHeaders(authentication)), BuildInfo.class, consumer);
+    }
+
+    /**
+     * Build an image from files on disk, which are archived while sent, compressed according to
+     * {@link #setCompression(Compression)}.
+     */
+    public void imageBuild(BuildImageRequest buildImageRequest, AuthConfig authentication, TarArchive context, Consumer<BuildInfo> consumer) throws IOException {
+        imageBuild(imageBuildRequest(buildImageRequest), authentication, context, consumer);
+    }
+
+    private void imageBuild(String request, AuthConfig authentication, TarArchive context, Consumer<BuildInfo> consumer) throws IOException {
+        progress(doPOST(request, payload(context), imageBuildHeaders(authentication)), BuildInfo.class, consumer);
+    }
+
+    /**
+     * Build an image from a local directory, unless an image has already been built from same context and parameters.
+     * Built image is labelled with {@link #BUILD_DIGEST_LABEL}, a digest of both, so when an image with same digest
+     * exists, build is skipped and image is just tagged. Set <code>nocache</code> to force build.
+     * @return <code>true</code> if image has been built, <code>false</code> if an existing one has been reused
+     * @throws IOException if daemon reported a build error, once progress stream has been consumed
+     */
+    public boolean imageBuild(BuildImageRequest buildImageRequest, AuthConfig authentication, BuildContext context, Consumer<BuildInfo> consumer) throws IOException {
+        // tag isn't part of digest, so same image can be reused with another tag
+        final String digest = context.digest(imageBuildParameters(buildImageRequest, buildImageRequest.getLabels(), null).toString());
+        if (!buildImageRequest.isNocache()) {
+            final String filters = gson.toJson(Collections.singletonMap("label",
+                    Collections.singletonList(BUILD_DIGEST_LABEL + "=" + digest)));
+            final List<ImageSummary> images = imageList(false, false, filters, Collections.singleton("Id"));
+            if (!images.isEmpty()) {
+                if (buildImageRequest.getTag() != null) {
+                    imageTag(images.get(0).getId(), buildImageRequest.getTag());
+                }
+                return false;
+            }
+        }
+
+        final Map<String, String> labels = new HashMap<>();
+        if (buildImageRequest.getLabels() != null) {
+            labels.putAll(buildImageRequest.getLabels());
+        }
+        labels.put(BUILD_DIGEST_LABEL, digest);
+        final BuildInfo[] failure = new BuildInfo[1];
+        imageBuild(imageBuildRequest(buildImageRequest, labels, buildImageRequest.getTag()), authentication, context.archive(), info -> {
+            if (failure[0] == null && (info.getError() != null || info.getErrorDetail() != null)) {
+                failure[0] = info;
+            }
+            consumer.accept(info);
+        });
+        if (failure[0] != null) {
+            final ErrorDetail detail = failure[0].getErrorDetail();
+            throw new IOException("Build failed: " + (detail != null && detail.getMessage() != null ? detail.getMessage() : failure[0].getError()));
+        }
+        return true;
+    }
+
+    /**
+     * Reactive flavor of {@link #imageBuild(BuildImageRequest, AuthConfig, InputStream, Consumer)}, see {@link StreamPublisher}.
+     * Build context is uploaded on first demand.
+     */
+    public Publisher<BuildInfo> imageBuildPublisher(BuildImageRequest buildImageRequest, AuthConfig authentication, InputStream context) {
+        return new StreamPublisher<>(() ->
+                jsonStream(doPOST(imageBuildRequest(buildImageRequest), context, imageBuildHeaders(authentication)), BuildInfo.class));
+    }
+
+    private String imageBuildRequest(BuildImageRequest buildImageRequest) {
+        return imageBuildRequest(buildImageRequest, buildImageRequest.getLabels(), buildImageRequest.getTag());
+    }
+
+    private String imageBuildRequest(BuildImageRequest buildImageRequest, Map<String, String> labels, String tag) {
+        return imageBuildParameters(buildImageRequest, labels, tag)
                 .query("q", buildImageRequest.isQuiet())
                 .query("nocache", buildImageRequest.isNocache())
                 .query("rm", buildImageRequest.isRm())
                 .query("forcerm", buildImageRequest.isForcerm())
+                .toString();
+    }
+
+    /**
+     * Parameters which impact built image, so part of build digest, unlike output and intermediate containers options.
+     */
+    private Request imageBuildParameters(BuildImageRequest buildImageRequest, Map<String, String> labels, String tag) {
+        return Request("/v", version, "/build")
                 .query("squash", buildImageRequest.isSquash())
                 .query("dockerfile", buildImageRequest.getDockerfile())
-                .query("t", buildImageRequest.getTag())
+                .query("t", tag)
                 .query("extrahosts", buildImageRequest.getExtrahosts())
                 .query("ulimits", buildImageRequest.getUlimits())
                 .query("remote", buildImageRequest.getRemote())
@@ -457,41 +985,43 @@ public class DockerClient extends HttpRestClient {
                 .query("networkmode", buildImageRequest.getNetworkmode())
                 .query("buildargs", buildImageRequest.getBuildargs())
                 .query("cachefrom", buildImageRequest.getCachefrom())
-                .query("labels", buildImageRequest.getLabels());
+                .query("labels", labels);
+    }
 
-        Map headers = new HashMap();
+    private Map<String, String> imageBuildHeaders(AuthConfig authentication) {
+        final Map<String, String> headers = registryAuth(authentication);
         headers.put("Content-Type", "application/x-tar");
-        if (authentication != null) {
-            headers.put("X-Registry-Auth", Base64.getEncoder().encodeToString(gson.toJson(authentication).getBytes(UTF_8)));
-        }
-
-        try (HttpRestClient.Response r = doPOST(req.toString(), context, headers);
-             Reader reader = new InputStreamReader(r.getBody())) {
-            while(reader.ready()) {
-                 consumer.accept(gson.fromJson(new JsonReader(reader), BuildInfo.class));
-             }
-         }
+        return headers;
     }
 
     /**
      * see https://docs.docker.com/engine/api/v1.40/#operation/ImagePush
      */
     public void imagePush(String image, String tag, AuthConfig authentication, Consumer<PushImageInfo> consumer) throws IOException {
-        if (tag == null) tag = "latest";
-        Request req = Request("/v", version, "/images/", image, "/push")
-                .query("tag", tag);
-        Map headers = new HashMap();
-        headers.put("X-Registry-Auth", Base64.getEncoder().encodeToString(gson.toJson(authentication).getBytes(UTF_8)));
+        progress(doPOST(imagePushRequest(image, tag), "".getBytes(), imagePushHeaders(authentication)), PushImageInfo.class, consumer);
+    }
 
-        final Socket socket = getSocket();
-        try (final Response r = doPOST(socket, req.toString(), "".getBytes(), headers);
-             final ChunkedInputStream in = new ChunkedInputStream(socket.getInputStream());
-             final InputStreamReader reader = new InputStreamReader(in)) {
+    /**
+     * Reactive flavor of {@link #imagePush(String, String, AuthConfig, Consumer)}, see {@link StreamPublisher}.
+     */
+    public Publisher<PushImageInfo> imagePushPublisher(String image, String tag, AuthConfig authentication) {
+        return new StreamPublisher<>(() ->
+                jsonStream(doPOST(imagePushRequest(image, tag), "".getBytes(), imagePushHeaders(authentication)), PushImageInfo.class));
+    }
 
-            while (!in.isEof()) {
-                consumer.accept(gson.fromJson(new JsonReader(reader), PushImageInfo.class));
-            }
-        }
+    private String imagePushRequest(String image, String tag) {
+        return Request("/v", version, "/images/", image, "/push")
+                .query("tag", tag != null ? tag : "latest")
+                .toString();
+    }
+
+    /**
+     * Push requires X-Registry-Auth header, even for anonymous access.
+     */
+    private Map<String, String> imagePushHeaders(AuthConfig authentication) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("X-Registry-Auth", registryAuthHeader(authentication));
+        return headers;
     }
 
     /**
@@ -500,8 +1030,9 @@ public class DockerClient extends HttpRestClient {
     public VolumeListResponse volumeList(VolumeFilters filters) throws IOException {
         Request req = Request("/v", version, "/volumes")
                 .query("filters", filters);
-        HttpRestClient.Response r = doGET(req.toString());
-        return gson.fromJson(r.readBody(), VolumeListResponse.class);
+        try (HttpRestClient.Response r = doGET(req.toString())) {
+            return readBody(r, VolumeListResponse.class);
+        }
     }
 
     /**
@@ -509,8 +1040,9 @@ public class DockerClient extends HttpRestClient {
      */
     public Volume volumeCreate(VolumeConfig volume) throws IOException {
         Request req = Request("/v", version, "/volumes/create");
-        HttpRestClient.Response r = doPOST(req.toString(), gson.toJson(volume));
-        return gson.fromJson(r.readBody(), Volume.class);
+        try (HttpRestClient.Response r = doPOST(req.toString(), gson.toJson(volume))) {
+            return readBody(r, Volume.class);
+        }
     }
 
     /**
@@ -519,7 +1051,7 @@ public class DockerClient extends HttpRestClient {
     public Volume volumeInspect(String name) throws IOException {
         Request req = Request("/v", version, "/volumes/", name);
         try (HttpRestClient.Response r = doGET(req.toString())) {
-            return gson.fromJson(r.readBody(), Volume.class);
+            return readBody(r, Volume.class);
         }
     }
 
@@ -540,7 +1072,7 @@ public class DockerClient extends HttpRestClient {
         Request req = Request("/v", version, "/networks")
                 .query("filters", filters);
         try (HttpRestClient.Response r = doGET(req.toString())) {
-            return gson.fromJson(r.readBody(), NetworkList.class);
+            return readBody(r, NetworkList.class);
         }
     }
 
@@ -549,8 +1081,9 @@ public class DockerClient extends HttpRestClient {
      */
     public Network networkCreate(NetworkConfig volume) throws IOException {
         Request req = Request("/v", version, "/networks/create");
-        HttpRestClient.Response r = doPOST(req.toString(), gson.toJson(volume));
-        return gson.fromJson(r.readBody(), Network.class);
+        try (HttpRestClient.Response r = doPOST(req.toString(), gson.toJson(volume))) {
+            return readBody(r, Network.class);
+        }
     }
 
     /**
@@ -558,8 +1091,9 @@ public class DockerClient extends HttpRestClient {
      */
     public Network networkInspect(String id) throws IOException {
         Request req = Request("/v", version, "/networks/", id);
-        HttpRestClient.Response r = doGET(req.toString());
-        return gson.fromJson(r.readBody(), Network.class);
+        try (HttpRestClient.Response r = doGET(req.toString())) {
+            return readBody(r, Network.class);
+        }
     }
 
     public void networkConnect(String id, String container) throws IOException {
@@ -598,20 +1132,78 @@ public class DockerClient extends HttpRestClient {
 
     /**
      * see https://docs.docker.com/engine/api/v1.40/#operation/SystemEvents
+     * Returns when stream ends, see {@link EventStream} for a stream which survives connection loss.
      */
     public void events(EventsFilters filters, String since, String until, EventConsumer consumer) throws IOException {
+        try (HttpRestClient.Response<ChunkedInputStream> r = events(filters, since, until);
+             JsonReader reader = events(r)) {
+            final TypeAdapter<SystemEventsResponse> adapter = gson.getAdapter(SystemEventsResponse.class);
+            while (reader.peek() != JsonToken.END_DOCUMENT) {
+                boolean done = consumer.accept(adapter.read(reader));
+                if (done) return;
+            }
+        }
+    }
+
+    /**
+     * Reactive flavor of {@link #events(EventsFilters, String, String, EventConsumer)}, see {@link StreamPublisher}.
+     */
+    public Publisher<SystemEventsResponse> eventsPublisher(EventsFilters filters, String since, String until) {
+        return new StreamPublisher<>(() -> jsonStream(events(filters, since, until), SystemEventsResponse.class));
+    }
+
+    /**
+     * Read progress messages till end of stream, as daemon cancels operation if connection is closed. Messages are
+     * decoded by a single reader, which buffers content beyond current one.
+     */
+    private <T> void progress(HttpRestClient.Response<?> response, Class<T> type, Consumer<T> consumer) throws IOException {
+        try (StreamPublisher.Source<T> messages = jsonStream(response, type)) {
+            T message;
+            while ((message = messages.next()) != null) {
+                consumer.accept(message);
+            }
+        }
+    }
+
+    /**
+     * A stream of JSON documents, as sent by daemon to report progress or events.
+     */
+    private <T> StreamPublisher.Source<T> jsonStream(HttpRestClient.Response<?> response, Class<T> type) {
+        final JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), UTF_8));
+        reader.setLenient(true);
+        final TypeAdapter<T> adapter = gson.getAdapter(type);
+        return new StreamPublisher.Source<T>() {
+            @Override
+            public T next() throws IOException {
+                return reader.peek() != JsonToken.END_DOCUMENT ? adapter.read(reader) : null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                response.close();
+            }
+        };
+    }
+
+    /**
+     * Open <code>/events</code> stream, for caller to consume and close.
+     */
+    HttpRestClient.Response<ChunkedInputStream> events(EventsFilters filters, String since, String until) throws IOException {
         Request req = Request("/v", version, "/events")
                 .query("filters", filters)
                 .query("since", since)
                 .query("until", until);
-        try (HttpRestClient.Response<ChunkedInputStream> r = doGET(req.toString());
-             final ChunkedInputStream body = r.getBody();
-             InputStreamReader reader = new InputStreamReader(body, UTF_8)) {
-            while (!body.isEof()) {
-                boolean done = consumer.accept(gson.fromJson(new JsonReader(reader), SystemEventsResponse.class));
-                if (done) return;
-            }
-        }
+        return doGET(req.toString());
+    }
+
+    /**
+     * Events are sent as a sequence of JSON documents, to be read by a single lenient reader, as it buffers content
+     * beyond current event.
+     */
+    JsonReader events(HttpRestClient.Response<ChunkedInputStream> response) {
+        final JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), UTF_8));
+        reader.setLenient(true);
+        return reader;
     }
 
     @FunctionalInterface
@@ -629,60 +1221,6 @@ public class DockerClient extends HttpRestClient {
     }
 
     private Request Request(String ... strings)  {
-        final Request Request = new Request();
-        for (String s : strings) {
-            Request.sb.append(s);
-        }
-        return Request;
-    }
-
-    private class Request {
-        final StringBuilder sb = new StringBuilder();
-        private boolean q;
-
-        private Request query(String name, Filters value) {
-            if (value != null) {
-                query(name, value.encode(gson));
-            }
-            return this;
-        }
-
-        private Request query(String name, int value) {
-            if (value > 0) {
-                query(name, (Object) value);
-            }
-            return this;
-        }
-
-        private Request query(String name, Map<?,?> value) {
-            if (value != null && value.size() > 0) {
-                query(name, gson.toJson(value));
-            }
-            return this;
-        }
-
-        private Request query(String name, Collection<?> value) {
-            if (value != null && value.size() > 0) {
-                query(name, gson.toJson(value));
-            }
-            return this;
-        }
-
-        private Request query(String name, Object value) {
-            if (value == null) {
-                return this;
-            }
-            sb.append( q ? "&": "?");
-            sb.append(name);
-            sb.append("=");
-            sb.append(value);
-            q = true;
-            return this;
-        }
-
-        @Override
-        public String toString() {
-            return sb.toString();
-        }
+        return new Request(gson, strings);
     }
 }
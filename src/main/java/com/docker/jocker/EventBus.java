@@ -0,0 +1,225 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.EventsFilters;
+import com.docker.jocker.model.SystemEventsResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Share a single <code>/events</code> stream to docker daemon between many subscribers. Events are decoded once, then
+ * dispatched to subscribers which filter them client-side, typically with {@link EventsFilters}, and consume them
+ * from their own bounded queue.
+ * <p>
+ * Stream is opened on first subscription, and resumed if connection to daemon is lost, see {@link EventStream}. Other
+ * failures end the stream, and are thrown to subscribers once they have consumed events already queued.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class EventBus implements Closeable {
+
+    /**
+     * What to do when an event is dispatched to a subscriber whose queue is full.
+     */
+    public enum Overflow {
+        /** wait for subscriber to consume events, which delays dispatch to all other subscribers */
+        BLOCK,
+        /** discard the event */
+        DROP_NEWEST,
+        /** discard the oldest event in queue to make room */
+        DROP_OLDEST
+    }
+
+    private final EventStream stream;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private Thread thread;
+    private volatile boolean closed;
+    private IOException failure;
+
+    public EventBus(DockerClient client) {
+        this.stream = new EventStream(client, null, null);
+    }
+
+    /**
+     * @param filter select events this subscriber is interested in
+     * @param capacity maximum number of events queued for this subscriber
+     */
+    public synchronized Subscription subscribe(Predicate<SystemEventsResponse> filter, int capacity, Overflow overflow) {
+        if (closed) {
+            throw new IllegalStateException("Event bus is closed");
+        }
+        final Subscription subscription = new Subscription(filter, capacity, overflow, subscriptions::remove);
+        if (failure != null) {
+            subscription.fail(failure);
+            return subscription;
+        }
+        subscriptions.add(subscription);
+        if (thread == null) {
+            thread = new Thread(this::run, "docker-events");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return subscription;
+    }
+
+    private void run() {
+        try {
+            stream.consume(event -> {
+                try {
+                    dispatch(event);
+                    return false;
+                } catch (InterruptedException e) {
+                    return true;
+                }
+            });
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IOException | RuntimeException e) {
+            fail(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    private synchronized void fail(IOException cause) {
+        if (closed) return; // stream failed as we closed it
+        failure = cause;
+        for (Subscription subscription : subscriptions) {
+            subscription.fail(cause);
+        }
+    }
+
+    void dispatch(SystemEventsResponse event) throws InterruptedException {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Stop listening for events. Subscribers can still consume events already queued, then get an {@link IOException}
+     * reporting bus is closed, including those already waiting for next event.
+     */
+    @Override
+    public void close() throws IOException {
+        final Thread t;
+        synchronized (this) {
+            closed = true;
+            for (Subscription subscription : subscriptions) {
+                subscription.fail("Event bus is closed", null);
+            }
+            subscriptions.clear();
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+        stream.close();
+    }
+
+    public static class Subscription implements Closeable {
+
+        /** queued once events stream has failed or bus is closed */
+        private static final SystemEventsResponse FAILED = new SystemEventsResponse();
+
+        private final Predicate<SystemEventsResponse> filter;
+        private final BlockingQueue<SystemEventsResponse> queue;
+        private final Overflow overflow;
+        private final AtomicLong dropped = new AtomicLong();
+        private final Consumer<Subscription> unsubscribe;
+        private volatile String message;
+        private volatile IOException failure;
+
+        Subscription(Predicate<SystemEventsResponse> filter, int capacity, Overflow overflow, Consumer<Subscription> unsubscribe) {
+            this.filter = filter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.overflow = overflow;
+            this.unsubscribe = unsubscribe;
+        }
+
+        void offer(SystemEventsResponse event) throws InterruptedException {
+            if (message != null) return;
+            if (filter != null && !filter.test(event)) return;
+            switch (overflow) {
+                case BLOCK:
+                    queue.put(event);
+                    break;
+                case DROP_NEWEST:
+                    if (!queue.offer(event)) {
+                        dropped.incrementAndGet();
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!queue.offer(event)) {
+                        if (queue.poll() != null) {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Events stream has failed, make room if needed so failure is reported after events still queued.
+         */
+        void fail(IOException cause) {
+            fail("Events stream failed", cause);
+        }
+
+        /**
+         * @param cause failure of events stream, <code>null</code> if bus has been closed
+         */
+        void fail(String message, IOException cause) {
+            if (this.message != null) return;
+            this.failure = cause;
+            this.message = message;
+            while (!queue.offer(FAILED)) {
+                if (queue.poll() != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * Wait for next event.
+         * @throws IOException if events stream has failed or bus has been closed
+         */
+        public SystemEventsResponse take() throws IOException, InterruptedException {
+            return check(queue.take());
+        }
+
+        /**
+         * @return next event, or <code>null</code> if none was received before timeout.
+         * @throws IOException if events stream has failed or bus has been closed
+         */
+        public SystemEventsResponse poll(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+            return check(queue.poll(timeout, unit));
+        }
+
+        private SystemEventsResponse check(SystemEventsResponse event) throws IOException {
+            if (event == FAILED) {
+                // keep it queued for next calls
+                queue.offer(FAILED);
+                throw new IOException(message, failure);
+            }
+            return event;
+        }
+
+        /**
+         * @return number of events discarded by overflow policy.
+         */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        @Override
+        public void close() {
+            unsubscribe.accept(this);
+        }
+    }
+}
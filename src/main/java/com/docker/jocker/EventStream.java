@@ -0,0 +1,148 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.ChunkedInputStream;
+import com.docker.jocker.model.EventsFilters;
+import com.docker.jocker.model.SystemEventsResponse;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A <code>/events</code> stream which survives connection loss. Stream is re-opened with <code>since</code> set to
+ * last event received, and events replayed by daemon are detected by a {@link RecentEvents} ring buffer, so each
+ * event is delivered exactly once to consumer. Other failures, like an error status for invalid filters or a malformed
+ * response, are not retried but thrown to caller.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class EventStream implements Closeable {
+
+    static final long RECONNECT_DELAY = 1000;
+    static final int RECENT_EVENTS = 256;
+
+    private final DockerClient client;
+    private final EventsFilters filters;
+    private final RecentEvents recent = new RecentEvents(RECENT_EVENTS);
+    private String since;
+    private long lastTimeNano;
+    private volatile HttpRestClient.Response<ChunkedInputStream> response;
+    private volatile boolean closed;
+
+    /**
+     * @param since timestamp to get events from, <code>null</code> for live events only.
+     */
+    public EventStream(DockerClient client, EventsFilters filters, String since) {
+        this.client = client;
+        this.filters = filters;
+        this.since = since;
+    }
+
+    /**
+     * Connect to daemon, so events are captured from now on even if {@link #consume} isn't called yet. Optional,
+     * <code>consume</code> otherwise connects on its own.
+     */
+    public void open() throws IOException {
+        if (response == null) {
+            response = connect();
+        }
+    }
+
+    private HttpRestClient.Response<ChunkedInputStream> connect() throws IOException {
+        final HttpRestClient.Response<ChunkedInputStream> r = client.events(filters, since, null);
+        if (since == null) {
+            // resume from connection time if we get disconnected before any event is received
+            since = timestamp(r.getHeaders().get("Date"));
+        }
+        return r;
+    }
+
+    /**
+     * Consume events until consumer returns <code>true</code> or stream is closed.
+     * @throws IOException if daemon reported an error or sent an invalid event, stream can't be resumed
+     */
+    public void consume(DockerClient.EventConsumer consumer) throws IOException, InterruptedException {
+        final TypeAdapter<SystemEventsResponse> adapter = client.gson.getAdapter(SystemEventsResponse.class);
+        while (!closed) {
+            try (HttpRestClient.Response<ChunkedInputStream> r = response != null ? response : connect();
+                 JsonReader reader = client.events(r)) {
+                response = r;
+                if (closed) return;
+                while (reader.peek() != JsonToken.END_DOCUMENT) {
+                    final SystemEventsResponse event = adapter.read(reader);
+                    if (isDuplicate(event)) continue;
+                    if (consumer.accept(event)) return;
+                }
+            } catch (IOException e) {
+                if (closed) return;
+                if (!isConnectionLoss(e)) throw e;
+            } catch (JsonParseException | IllegalStateException e) {
+                if (closed) return;
+                throw new IOException("Invalid event received from daemon", e);
+            } finally {
+                response = null;
+            }
+            Thread.sleep(RECONNECT_DELAY);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if failure is a lost connection to daemon, so stream can be resumed, rather than an
+     * error status or a malformed response, which would fail again.
+     */
+    static boolean isConnectionLoss(IOException e) {
+        return !(e instanceof HttpStatusException || e instanceof MalformedJsonException);
+    }
+
+    /**
+     * Events are received in order, so replayed ones are at most as recent as last one received.
+     */
+    private boolean isDuplicate(SystemEventsResponse event) {
+        final long time = event.getTimeNano() != null ? event.getTimeNano() : 0;
+        final RecentEvents.Key key = RecentEvents.key(event);
+        if (time <= lastTimeNano && recent.contains(key)) {
+            return true;
+        }
+        recent.add(key);
+        if (time > lastTimeNano) {
+            lastTimeNano = time;
+            since = timestamp(time);
+        }
+        return false;
+    }
+
+    /**
+     * @return event time as a unix timestamp with nanoseconds, as expected by <code>since</code> parameter.
+     */
+    static String timestamp(long timeNano) {
+        return String.format("%d.%09d", timeNano / 1_000_000_000, timeNano % 1_000_000_000);
+    }
+
+    /**
+     * @return HTTP date as a unix timestamp, or <code>null</code> if not set.
+     */
+    static String timestamp(String date) {
+        if (date == null) return null;
+        try {
+            return String.valueOf(ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        final HttpRestClient.Response<ChunkedInputStream> r = response;
+        if (r != null) {
+            r.close();
+        }
+    }
+}
@@ -1,41 +1,69 @@
 package com.docker.jocker;
 
+import com.docker.jocker.io.BufferPool;
 import com.docker.jocker.io.ChunkedInputStream;
+import com.docker.jocker.io.ChunkedOutputStream;
 import com.docker.jocker.io.ContentLengthInputStream;
-import com.docker.jocker.model.ErrorDetail;
+import com.docker.jocker.io.HttpInputStream;
+import com.docker.jocker.model.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import jnr.unixsocket.UnixSocketAddress;
 import jnr.unixsocket.UnixSocketChannel;
 import org.apache.commons.io.IOUtils;
 
 import javax.net.ssl.SSLContext;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
-import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-public class HttpRestClient {
+public class HttpRestClient implements Closeable {
 
     protected final URI uri;
     protected final String host;
     protected final Gson gson;
+    protected final ConnectionPool pool;
 
     public HttpRestClient(URI uri, SSLContext ssl) {
+        this(uri, ssl, ConnectionPool.DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param maxIdle maximum number of idle keep-alive connections retained to the daemon, this doesn't limit
+     *                the number of concurrent connections
+     */
+    public HttpRestClient(URI uri, SSLContext ssl, int maxIdle) {
         this.uri = uri;
-        this.gson = new GsonBuilder().create();
+        this.gson = createGson();
+        this.pool = new ConnectionPool(maxIdle, ConnectionPool.DEFAULT_KEEP_ALIVE);
         if ("unix".equals(uri.getScheme())) {
             this.host = "docker";
         } else {
@@ -44,26 +72,90 @@ public class HttpRestClient {
         }
     }
 
+    /**
+     * Gson with generated, reflection-free adapters registered for models we decode the most, see
+     * <code>x-gson-adapter</code> in swagger spec. Other models fall back to reflection.
+     */
+    static Gson createGson() {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(ContainerSummaryInner.ADAPTER)
+                .registerTypeAdapterFactory(ContainerSummaryInnerHostConfig.ADAPTER)
+                .registerTypeAdapterFactory(ContainerSummaryInnerNetworkSettings.ADAPTER)
+                .registerTypeAdapterFactory(ContainerInspectResponse.ADAPTER)
+                .registerTypeAdapterFactory(ContainerState.ADAPTER)
+                .registerTypeAdapterFactory(EndpointSettings.ADAPTER)
+                .registerTypeAdapterFactory(Mount.ADAPTER)
+                .registerTypeAdapterFactory(MountPoint.ADAPTER)
+                .registerTypeAdapterFactory(Port.ADAPTER)
+                .registerTypeAdapterFactory(SystemEventsResponse.ADAPTER)
+                .registerTypeAdapterFactory(SystemEventsResponseActor.ADAPTER)
+                .registerTypeAdapterFactory(CreateImageInfo.ADAPTER)
+                .registerTypeAdapterFactory(BuildInfo.ADAPTER)
+                .registerTypeAdapterFactory(ImageID.ADAPTER)
+                .registerTypeAdapterFactory(ProgressDetail.ADAPTER)
+                .registerTypeAdapterFactory(ErrorDetail.ADAPTER)
+                .create();
+    }
+
     protected Socket getSocket() throws IOException {
         if ("unix".equals(uri.getScheme())) {
             UnixSocketAddress address = new UnixSocketAddress(new File(uri.getPath()));
             return UnixSocketChannel.open(address).socket();
         } else {
-            return new Socket(host, uri.getPort());
+            // channel backed socket, so response bodies can be read into direct buffers
+            return SocketChannel.open(new InetSocketAddress(host, uri.getPort())).socket();
         }
     }
 
-    public Response doGET(String path) throws IOException {
-        final Socket socket = getSocket();
-        final OutputStream out = socket.getOutputStream();
+    /**
+     * Send a request over a pooled keep-alive connection. A connection reused from pool might have been closed by
+     * daemon while idle, in such case request is sent again on a fresh connection, if payload can be replayed.
+     */
+    private Response execute(RequestWriter request, boolean replayable) throws IOException {
+        if (replayable) {
+            final ConnectionPool.Connection connection = pool.get();
+            if (connection != null) {
+                final int status;
+                try {
+                    request.write(connection);
+                    status = connection.getInputStream().readStatus();
+                } catch (IOException stale) {
+                    connection.close();
+                    return execute(request, false);
+                }
+                return getResponse(connection, status);
+            }
+        }
 
-        final PrintWriter w = new PrintWriter(out);
-        w.println("GET " + path + " HTTP/1.1");
-        w.println("Host: "+host);
-        w.println();
-        w.flush();
+        final ConnectionPool.Connection connection = new ConnectionPool.Connection(getSocket());
+        final int status;
+        try {
+            request.write(connection);
+            status = connection.getInputStream().readStatus();
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return getResponse(connection, status);
+    }
 
-        return getResponse(socket);
+    @FunctionalInterface
+    private interface RequestWriter {
+        void write(OutputStream out) throws IOException;
+
+        default void write(ConnectionPool.Connection connection) throws IOException {
+            write(connection.getOutputStream());
+        }
+    }
+
+    public Response doGET(String path) throws IOException {
+        return execute(out -> {
+            final PrintWriter w = new PrintWriter(out);
+            w.println("GET " + path + " HTTP/1.1");
+            w.println("Host: "+host);
+            w.println();
+            w.flush();
+        }, true);
     }
 
     public Response doPOST(String path) throws IOException {
@@ -75,12 +167,22 @@ public class HttpRestClient {
     }
 
     public Response doPOST(String path, InputStream payload, Map<String, String> headers) throws IOException {
-        final Socket socket = getSocket();
-        return doPOST(socket, path, payload, headers);
+        return doPOST(path, out -> IOUtils.copy(payload, out), headers);
+    }
+
+    /**
+     * Send a payload written on the fly, with chunked transfer encoding.
+     */
+    public Response doPOST(String path, Payload payload, Map<String, String> headers) throws IOException {
+        return execute(out -> writePOST(out, path, payload, headers), false);
     }
 
     protected Response doPOST(Socket socket, String path, InputStream payload, Map<String, String> headers) throws IOException {
-        final OutputStream out = socket.getOutputStream();
+        writePOST(socket.getOutputStream(), path, out -> IOUtils.copy(payload, out), headers);
+        return getResponse(socket);
+    }
+
+    private void writePOST(OutputStream out, String path, Payload payload, Map<String, String> headers) throws IOException {
         if (!headers.containsKey("Content-Type")) {
             headers.put("Content-Type", "application/json; charset=utf-8");
         }
@@ -95,38 +197,100 @@ public class HttpRestClient {
         w.println();
         w.flush();
 
-        byte[] buffer = new byte[CHUNK_SIZE];
-        int read;
-        while ((read = payload.read(buffer, 0, CHUNK_SIZE)) > 0) {
-            out.write(Integer.toHexString(read).getBytes(US_ASCII));
-            out.write(CRLF);
-            out.write(buffer, 0, read);
-            out.write(CRLF);
-            System.out.println("wrote "+ read);
-        }
-        out.write(CHUNK_END);
-        out.flush();
-
-        return getResponse(socket);
+        final ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+        payload.writeTo(chunked);
+        chunked.close();
     }
 
-    private final byte[] CRLF = "\r\n".getBytes(US_ASCII);
-    private final byte[] CHUNK_END = "0\r\n\r\n".getBytes(US_ASCII);
-    private final int CHUNK_SIZE = 4 * 1024;
+    /**
+     * Upload a file with a Content-Length. Over TCP file is sent with {@link FileChannel#transferTo}, so it is copied
+     * by kernel from page cache to socket, otherwise it is sent through a pooled direct buffer.
+     */
+    public Response doPOST(String path, Path file, Map<String, String> headers) throws IOException {
+        return execute(new RequestWriter() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                writePOST(out, Channels.newChannel(out), path, file, headers);
+            }
+
+            @Override
+            public void write(ConnectionPool.Connection connection) throws IOException {
+                final OutputStream out = connection.getOutputStream();
+                final WritableByteChannel channel = connection.getSocket().getChannel();
+                writePOST(out, channel != null ? channel : Channels.newChannel(out), path, file, headers);
+            }
+        }, false);
+    }
 
+    private void writePOST(OutputStream out, WritableByteChannel socket, String path, Path file, Map<String, String> headers) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            final long length = channel.size();
+            final PrintWriter w = new PrintWriter(out);
+            w.println("POST " + path + " HTTP/1.1");
+            w.println("Host: "+host);
+            if (!headers.containsKey("Content-Type")) {
+                w.println("Content-Type: application/octet-stream");
+            }
+            w.println("Content-Length: " + length);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                w.println(header.getKey() +": "+header.getValue());
+            }
+            w.println();
+            w.flush();
+
+            if (canTransferTo(socket)) {
+                long position = 0;
+                while (position < length) {
+                    final long n = channel.transferTo(position, length - position, socket);
+                    if (n == 0 && position >= channel.size()) {
+                        throw new EOFException(file + " has been truncated while sent");
+                    }
+                    position += n;
+                }
+            } else {
+                final ByteBuffer buffer = BufferPool.DEFAULT.acquire();
+                try {
+                    long remaining = length;
+                    while (remaining > 0) {
+                        if (remaining < buffer.capacity()) buffer.limit((int) remaining);
+                        if (channel.read(buffer) < 0) {
+                            throw new EOFException(file + " has been truncated while sent");
+                        }
+                        buffer.flip();
+                        remaining -= buffer.remaining();
+                        while (buffer.hasRemaining()) socket.write(buffer);
+                        buffer.clear();
+                    }
+                } finally {
+                    BufferPool.DEFAULT.release(buffer);
+                }
+                out.flush();
+            }
+        }
+    }
 
+    /**
+     * {@link FileChannel#transferTo} only sends file without copy to a JDK socket channel, jnr unix socket channels are
+     * {@link SocketChannel}s too but get a copy through a small heap buffer, slower than our pooled direct buffer.
+     */
+    static boolean canTransferTo(WritableByteChannel channel) {
+        return channel instanceof SocketChannel && !(channel instanceof UnixSocketChannel);
+    }
 
     public Response doPOST(String path, String payload, Map<String, String> headers) throws IOException {
         return doPOST(path, payload.getBytes(UTF_8), headers);
     }
 
     public Response doPOST(String path, byte[] payload, Map<String, String> headers) throws IOException {
-        final Socket socket = getSocket();
-        return doPOST(socket, path, payload, headers);
+        return execute(out -> writePOST(out, path, payload, headers), true);
     }
 
     protected Response doPOST(Socket socket, String path, byte[] payload, Map<String, String> headers) throws IOException {
-        final OutputStream out = socket.getOutputStream();
+        writePOST(socket.getOutputStream(), path, payload, headers);
+        return getResponse(socket);
+    }
+
+    private void writePOST(OutputStream out, String path, byte[] payload, Map<String, String> headers) throws IOException {
         final PrintWriter w = new PrintWriter(out);
         w.println("POST " + path + " HTTP/1.1");
         w.println("Host: "+host);
@@ -138,71 +302,130 @@ public class HttpRestClient {
         w.println();
         w.flush();
         out.write(payload);
-
-        return getResponse(socket);
     }
 
     public Response doHEAD(String path) throws IOException {
-        final Socket socket = getSocket();
-        final OutputStream out = socket.getOutputStream();
-        final PrintWriter w = new PrintWriter(out);
-        w.println("HEAD " + path + " HTTP/1.1");
-        w.println("Host: "+host);
-        w.println();
-        w.flush();
-        return getResponse(socket);
+        return execute(out -> {
+            final PrintWriter w = new PrintWriter(out);
+            w.println("HEAD " + path + " HTTP/1.1");
+            w.println("Host: "+host);
+            w.println();
+            w.flush();
+        }, true);
     }
 
 
     public Response doPUT(String path, byte[] bytes) throws IOException {
-        final Socket socket = getSocket();
-        final OutputStream out = socket.getOutputStream();
+        return execute(out -> {
+            final PrintWriter w = new PrintWriter(out);
+            w.println("PUT " + path + " HTTP/1.1");
+            w.println("Host: "+host);
+            w.println("Content-Type: application/gzip");
+            w.println("Content-Length: "+bytes.length);
+            w.println();
+            w.flush();
+            out.write(bytes);
+        }, true);
+    }
 
-        final PrintWriter w = new PrintWriter(out);
-        w.println("PUT " + path + " HTTP/1.1");
-        w.println("Host: "+host);
-        w.println("Content-Type: application/gzip");
-        w.println("Content-Length: "+bytes.length);
-        w.println();
-        w.flush();
-        out.write(bytes);
+    /**
+     * A request body written on the fly, so it doesn't need to be loaded in memory.
+     */
+    @FunctionalInterface
+    public interface Payload {
+        void writeTo(OutputStream out) throws IOException;
+    }
 
-        return getResponse(socket);
+    /**
+     * Send a streamed payload. With a known <code>length</code> it is sent with a Content-Length header, otherwise
+     * (<code>-1</code>) with chunked transfer encoding.
+     */
+    public Response doPUT(String path, String contentType, long length, Payload payload) throws IOException {
+        return execute(out -> {
+            final PrintWriter w = new PrintWriter(out);
+            w.println("PUT " + path + " HTTP/1.1");
+            w.println("Host: "+host);
+            w.println("Content-Type: " + contentType);
+            if (length >= 0) {
+                w.println("Content-Length: " + length);
+            } else {
+                w.println("Transfer-Encoding: chunked");
+            }
+            w.println();
+            w.flush();
+            if (length >= 0) {
+                final BufferedOutputStream buffered = new BufferedOutputStream(out, BufferPool.DEFAULT_BUFFER_SIZE);
+                payload.writeTo(buffered);
+                buffered.flush();
+            } else {
+                final ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+                payload.writeTo(chunked);
+                chunked.close();
+            }
+        }, false);
     }
 
     public Response doDELETE(String path) throws IOException {
-        final Socket socket = getSocket();
-        final OutputStream out = socket.getOutputStream();
+        return execute(out -> {
+            final PrintWriter w = new PrintWriter(out);
+            w.println("DELETE " + path + " HTTP/1.1");
+            w.println("Host: "+host);
+            w.println();
+            w.flush();
+        }, true);
+    }
 
-        final PrintWriter w = new PrintWriter(out);
-        w.println("DELETE " + path + " HTTP/1.1");
-        w.println("Host: "+host);
-        w.println();
-        w.flush();
+    private Response getResponse(Socket socket) throws IOException {
+        final HttpInputStream in = new HttpInputStream(socket.getInputStream(), socket.getChannel());
+        return getResponse(in, in.readStatus(), null, socket);
+    }
 
-        return getResponse(socket);
+    /**
+     * Connection is returned to pool on {@link Response#close()} when response body has been fully consumed,
+     * otherwise it gets closed.
+     */
+    private Response getResponse(ConnectionPool.Connection connection, int status) throws IOException {
+        return getResponse(connection.getInputStream(), status, connection, connection);
     }
 
-    private Response getResponse(Socket socket) throws IOException {
-        final InputStream in = socket.getInputStream();
-        int status = readHttpStatus(in);
-        Map<String, String> headers = readHttpResponseHeaders(in);
-
-        Response<?> response;
-        if (headers.containsKey("Content-Length")) {
-            final int length = Integer.parseInt(headers.get("Content-Length"));
-            response = new Response(headers, new ContentLengthInputStream(in, length), socket);
-        } else if (headers.containsKey("Transfer-Encoding") && "chunked".equals(headers.get("Transfer-Encoding"))) {
-            response = new Response(headers, new ChunkedInputStream(in), socket);
+    private Response getResponse(HttpInputStream in, int status, ConnectionPool.Connection pooled, Closeable socket) throws IOException {
+        final Map<String, String> headers = in.readHeaders();
+
+        final InputStream body;
+        if (status == 204 || status == 304) {
+            body = new ContentLengthInputStream(in, 0);
+        } else if (headers.containsKey("Content-Length")) {
+            final long length = Long.parseLong(headers.get("Content-Length").trim());
+            body = new ContentLengthInputStream(in, length);
+        } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            body = new ChunkedInputStream(in);
+        } else {
+            body = in;
+        }
+
+        final Closeable close;
+        if (pooled != null) {
+            close = () -> {
+                if (isReusable(headers, body)) {
+                    pool.release(pooled);
+                } else {
+                    pooled.close();
+                }
+            };
         } else {
-            response = new Response(headers, in, socket);
+            close = socket;
         }
+        Response<?> response = new Response(headers, body, close);
 
         if (status / 100 > 2) {
             String message = String.valueOf(status);
             final String type = headers.get("Content-Type");
-            if (type != null && type.startsWith("application/json")) {
-                message = gson.fromJson(response.readBody(), ErrorDetail.class).getMessage();
+            try {
+                if (type != null && type.startsWith("application/json")) {
+                    message = readBody(response, ErrorDetail.class).getMessage();
+                }
+            } finally {
+                response.close();
             }
             if (status == 404) {
                 throw new NotFoundException(message);
@@ -210,43 +433,72 @@ public class HttpRestClient {
             if (status == 409) {
                 throw new ConflictException(message);
             }
-            throw new IOException(message);
+            throw new HttpStatusException(status, message);
         }
         return response;
     }
 
-    private Map<String, String> readHttpResponseHeaders(InputStream in) throws IOException {
-        String line;
-        int responseCode;
-
-        Map<String, String> headers = new HashMap<>();
-        int length = -1;
-        boolean chunked = false;
-        while ((line = readLine(in)) != null) {
-            if (line.length() == 0) break; // end of header
-            final int x = line.indexOf(':');
-            String header = line.substring(0, x);
-            final String value = line.substring(x + 2);
-            headers.put(header, value);
+    /**
+     * A connection can be reused once the response body has been fully consumed, as long as daemon didn't ask to
+     * close it.
+     */
+    private static boolean isReusable(Map<String, String> headers, InputStream body) {
+        if ("close".equalsIgnoreCase(headers.get("Connection"))) {
+            return false;
+        }
+        if (body instanceof ContentLengthInputStream) {
+            return ((ContentLengthInputStream) body).isEof();
         }
-        return headers;
+        if (body instanceof ChunkedInputStream) {
+            return ((ChunkedInputStream) body).isEof();
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
     }
 
-    private int readHttpStatus(InputStream in) throws IOException {
-        String line = readLine(in);
-        int i = line.indexOf(' ');
-        int j = line.indexOf(' ',  i+1);
-        return Integer.parseInt(line.substring(i+1,j));
+    /**
+     * Decode JSON response body as it is read from socket, without first loading the whole payload as a String.
+     * Gson checks the document has been fully consumed, so body is drained and connection can be reused.
+     */
+    protected <T> T readBody(Response<?> response, Class<T> type) throws IOException {
+        try (Reader reader = new InputStreamReader(response.getBody(), UTF_8)) {
+            return gson.fromJson(reader, type);
+        }
     }
 
-    private String readLine(final InputStream in) throws IOException {
-        StringBuilder s = new StringBuilder();
-        char c;
-        while((c = (char) in.read()) != '\r') {
-            s.append(c);
+    /**
+     * Decode a JSON array, only retaining the wanted <code>fields</code> of each element. Other attributes are skipped
+     * as they are read from socket, without being decoded, and left <code>null</code>.
+     */
+    protected <T> T readBody(Response<?> response, Class<T> type, Set<String> fields) throws IOException {
+        final JsonArray projection = new JsonArray();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                final JsonObject element = new JsonObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String name = reader.nextName();
+                    if (fields.contains(name)) {
+                        element.add(name, JsonParser.parseReader(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                projection.add(element);
+            }
+            reader.endArray();
+            // drain body so connection can be reused
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected content after JSON array");
+            }
         }
-        in.read(); // \n
-        return s.toString();
+        return gson.fromJson(projection, type);
     }
 
     public Reader readPayload(final InputStream in, int length) throws IOException {
@@ -281,8 +533,48 @@ public class HttpRestClient {
             return body;
         }
 
+        /**
+         * @return body as a stream handed over to caller, closing it closes this response, so connection is released
+         * or, if body hasn't been fully read, closed
+         */
+        public InputStream openStream() {
+            return new FilterInputStream(body) {
+                @Override
+                public void close() throws IOException {
+                    Response.this.close();
+                }
+            };
+        }
+
         public Map<String, String> getHeaders() {
             return headers;
         }
+
+        /**
+         * Write body to <code>target</code> at its current position, through a pooled direct buffer so it isn't
+         * copied through heap. {@link FileChannel#transferFrom} isn't used, as for a socket source JDK copies through
+         * a small temporary direct buffer, which makes it slower.
+         * @return number of bytes written
+         */
+        public long transferTo(FileChannel target) throws IOException {
+            final ReadableByteChannel in = body instanceof ReadableByteChannel ? (ReadableByteChannel) body : Channels.newChannel(body);
+            final ByteBuffer buffer = BufferPool.DEFAULT.acquire();
+            long written = 0;
+            try {
+                while (in.read(buffer) >= 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        written += target.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            } finally {
+                BufferPool.DEFAULT.release(buffer);
+            }
+            if (body instanceof ContentLengthInputStream && !((ContentLengthInputStream) body).isEof()) {
+                throw new EOFException("Unexpected end of response body");
+            }
+            return written;
+        }
     }
 }
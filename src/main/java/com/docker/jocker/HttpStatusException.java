@@ -0,0 +1,22 @@
+package com.docker.jocker;
+
+import java.io.IOException;
+
+/**
+ * Error status returned by daemon, other than those reported by {@link NotFoundException} and {@link ConflictException}.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class HttpStatusException extends IOException {
+
+    private final int status;
+
+    public HttpStatusException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,236 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.DockerMultiplexedFrameReader.StreamType;
+import com.docker.jocker.io.LogLineDecoder;
+import com.docker.jocker.model.ContainerConfig;
+import com.docker.jocker.model.ContainerInspectResponse;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Follow logs of many containers, and merge them into a single stream ordered by timestamp.
+ * <p>
+ * Logs are received with {@link DockerAsyncClient}, so following hundreds of containers only requires a few
+ * selector threads. Each container log is ordered, so lines are merged by a k-way merge on a heap of containers
+ * ordered by their oldest pending line. As a container with no pending line might still send an older one, a line
+ * is held until all containers have pending lines, or up to <code>window</code>. Lines received later than this
+ * are delivered out of order.
+ * <p>
+ * Consumer is invoked from a dedicated thread. Pending lines are kept in memory, so a slow consumer makes them
+ * accumulate.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class LogAggregator implements Closeable {
+
+    private final DockerAsyncClient client;
+    private final long window;
+    private final Consumer<LogLine> consumer;
+
+    private final PriorityQueue<Source> heap = new PriorityQueue<>(Comparator.comparingLong(s -> s.lines.peek().timestamp));
+    private final List<CompletableFuture<Void>> streams = new ArrayList<>();
+    /** sources still receiving logs, but without any pending line */
+    private int idle;
+    private boolean closed;
+    private final Thread thread;
+
+    /**
+     * @param window how long a line can be held, waiting for older lines from other containers
+     */
+    public LogAggregator(DockerAsyncClient client, long window, TimeUnit unit, Consumer<LogLine> consumer) {
+        this.client = client;
+        this.window = unit.toNanos(window);
+        this.consumer = consumer;
+        this.thread = new Thread(this::run, "docker-logs-merge");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Follow container stdout and stderr logs.
+     * @param container container ID or name, reported as {@link LogLine#getContainer()}
+     * @param since only return logs since this unix timestamp, 0 for all
+     * @param tail number of lines to return from the end of logs, or <code>all</code>
+     * @return completed when container log stream ends
+     */
+    public CompletableFuture<Void> follow(String container, int since, String tail) {
+        final Source source = register(container);
+        final CompletableFuture<Void> future = client.containerInspect(container).thenCompose(inspect -> {
+            final LogLineDecoder decoder = new LogLineDecoder(!isTty(inspect), true, source::add);
+            final CompletableFuture<Void> logs = client.containerLogs(container, true, true, true, true, since, tail, decoder::decode);
+            synchronized (this) {
+                streams.add(logs);
+                if (closed) logs.cancel(false);
+            }
+            return logs.whenComplete((r, e) -> decoder.flush());
+        });
+        future.whenComplete((r, e) -> source.finish());
+        return future;
+    }
+
+    synchronized Source register(String container) {
+        if (closed) throw new IllegalStateException("Aggregator is closed");
+        idle++;
+        return new Source(container);
+    }
+
+    private static boolean isTty(ContainerInspectResponse inspect) {
+        final ContainerConfig config = inspect.getConfig();
+        return config != null && Boolean.TRUE.equals(config.isTty());
+    }
+
+    private void run() {
+        while (true) {
+            final LogLine line;
+            synchronized (this) {
+                try {
+                    while (true) {
+                        if (closed) return;
+                        final Source next = heap.peek();
+                        if (next == null) {
+                            wait();
+                            continue;
+                        }
+                        final long hold = next.lines.peek().received + window - System.nanoTime();
+                        if (idle == 0 || hold <= 0) {
+                            line = next.poll();
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, hold);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            consumer.accept(line);
+        }
+    }
+
+    /**
+     * Stop following logs. Pending lines are discarded.
+     */
+    @Override
+    public void close() {
+        final List<CompletableFuture<Void>> running;
+        synchronized (this) {
+            closed = true;
+            running = new ArrayList<>(streams);
+            notifyAll();
+        }
+        for (CompletableFuture<Void> stream : running) {
+            stream.cancel(false);
+        }
+    }
+
+    /**
+     * Log lines received from a container, not delivered yet. Guarded by aggregator lock.
+     */
+    class Source {
+
+        final String container;
+        final ArrayDeque<LogLine> lines = new ArrayDeque<>();
+        boolean finished;
+
+        Source(String container) {
+            this.container = container;
+        }
+
+        /**
+         * Invoked by selector thread, line has to be copied.
+         */
+        void add(StreamType stream, long timestamp, ByteBuffer line) {
+            final byte[] content = new byte[line.remaining()];
+            line.get(content);
+            final LogLine l = new LogLine(container, stream, timestamp, content, System.nanoTime());
+            synchronized (LogAggregator.this) {
+                if (lines.isEmpty()) {
+                    lines.add(l);
+                    heap.add(this);
+                    idle--;
+                    LogAggregator.this.notifyAll();
+                } else {
+                    lines.add(l);
+                }
+            }
+        }
+
+        LogLine poll() {
+            heap.remove();
+            final LogLine line = lines.poll();
+            if (!lines.isEmpty()) {
+                heap.add(this);
+            } else if (!finished) {
+                idle++;
+            }
+            return line;
+        }
+
+        void finish() {
+            synchronized (LogAggregator.this) {
+                finished = true;
+                if (lines.isEmpty()) {
+                    idle--;
+                }
+                LogAggregator.this.notifyAll();
+            }
+        }
+    }
+
+    public static class LogLine {
+
+        private final String container;
+        private final StreamType stream;
+        private final long timestamp;
+        private final byte[] content;
+        final long received;
+
+        LogLine(String container, StreamType stream, long timestamp, byte[] content, long received) {
+            this.container = container;
+            this.stream = stream;
+            this.timestamp = timestamp;
+            this.content = content;
+            this.received = received;
+        }
+
+        /**
+         * @return container as passed to {@link LogAggregator#follow}
+         */
+        public String getContainer() {
+            return container;
+        }
+
+        public StreamType getStream() {
+            return stream;
+        }
+
+        /**
+         * @return nanoseconds since epoch, or {@link LogLineDecoder#NO_TIMESTAMP}
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return line content, without timestamp nor line terminator
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        @Override
+        public String toString() {
+            return container + " " + stream + " " + new String(content, UTF_8);
+        }
+    }
+}
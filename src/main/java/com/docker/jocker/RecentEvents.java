@@ -0,0 +1,86 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.SystemEventsResponse;
+import com.docker.jocker.model.SystemEventsResponseActor;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size ring buffer of recently received events keys, used to detect events replayed by daemon when an events
+ * stream is resumed. Lock-free: recording a key only claims next slot, older keys get overwritten.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+class RecentEvents {
+
+    private final AtomicReferenceArray<Key> keys;
+    private final AtomicLong next = new AtomicLong();
+    private final int mask;
+
+    /**
+     * @param capacity number of keys retained, rounded up to a power of two.
+     */
+    RecentEvents(int capacity) {
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.keys = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    void add(Key key) {
+        keys.set((int) (next.getAndIncrement() & mask), key);
+    }
+
+    boolean contains(Key key) {
+        for (int i = 0; i < keys.length(); i++) {
+            if (key.equals(keys.get(i))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Events don't have an ID, so identify them by timestamp, type, action and actor.
+     */
+    static Key key(SystemEventsResponse event) {
+        final SystemEventsResponseActor actor = event.getActor();
+        final long time = event.getTimeNano() != null ? event.getTimeNano() : 0;
+        return new Key(time, event.getType(), event.getAction(), actor != null ? actor.getID() : null);
+    }
+
+    static final class Key {
+
+        private final long time;
+        private final String type;
+        private final String action;
+        private final String actor;
+
+        Key(long time, String type, String action, String actor) {
+            this.time = time;
+            this.type = type;
+            this.action = action;
+            this.actor = actor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return time == key.time
+                    && Objects.equals(type, key.type)
+                    && Objects.equals(action, key.action)
+                    && Objects.equals(actor, key.actor);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(time, type, action, actor);
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + type + " " + action + " " + actor;
+        }
+    }
+}
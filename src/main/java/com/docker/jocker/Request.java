@@ -0,0 +1,70 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.Filters;
+import com.google.gson.Gson;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Build a docker API request path with query parameters, ignoring unset ones.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+class Request {
+    private final Gson gson;
+    final StringBuilder sb = new StringBuilder();
+    private boolean q;
+
+    Request(Gson gson, String ... strings) {
+        this.gson = gson;
+        for (String s : strings) {
+            sb.append(s);
+        }
+    }
+
+    Request query(String name, Filters value) {
+        if (value != null) {
+            query(name, value.encode(gson));
+        }
+        return this;
+    }
+
+    Request query(String name, int value) {
+        if (value > 0) {
+            query(name, (Object) value);
+        }
+        return this;
+    }
+
+    Request query(String name, Map<?,?> value) {
+        if (value != null && value.size() > 0) {
+            query(name, gson.toJson(value));
+        }
+        return this;
+    }
+
+    Request query(String name, Collection<?> value) {
+        if (value != null && value.size() > 0) {
+            query(name, gson.toJson(value));
+        }
+        return this;
+    }
+
+    Request query(String name, Object value) {
+        if (value == null) {
+            return this;
+        }
+        sb.append( q ? "&": "?");
+        sb.append(name);
+        sb.append("=");
+        sb.append(value);
+        q = true;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
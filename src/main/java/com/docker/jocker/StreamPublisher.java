@@ -0,0 +1,188 @@
+package com.docker.jocker;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Reactive Streams {@link Publisher} for a streamed API response, so consumer controls the pace at which response
+ * is read. Request is sent on first demand, then an item is only read from socket when subscriber has requested one,
+ * so a slow subscriber throttles daemon connection rather than having items buffered. Cancelling subscription closes
+ * the response.
+ * <p>
+ * Reads are blocking, so they run on an {@link Executor}, and subscriber is signaled from there. Publisher is cold
+ * and only accepts a single subscriber.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class StreamPublisher<T> implements Publisher<T> {
+
+    /**
+     * Items read from an API response.
+     */
+    public interface Source<T> extends Closeable {
+        /**
+         * @return next item, or <code>null</code> at end of stream.
+         */
+        T next() throws IOException;
+    }
+
+    public interface Opener<T> {
+        Source<T> open() throws IOException;
+    }
+
+    private static ExecutorService defaultExecutor;
+
+    private final Opener<T> opener;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    public StreamPublisher(Opener<T> opener) {
+        this(opener, defaultExecutor());
+    }
+
+    public StreamPublisher(Opener<T> opener, Executor executor) {
+        this.opener = opener;
+        this.executor = executor;
+    }
+
+    private static synchronized Executor defaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(r -> {
+                final Thread t = new Thread(r, "docker-publisher");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return defaultExecutor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Publisher only accepts a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new StreamSubscription(subscriber));
+    }
+
+    private class StreamSubscription implements Subscription, Runnable {
+
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        /** pending drain requests, so a single thread reads and signals subscriber at a time */
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile Source<T> source;
+        private volatile boolean cancelled;
+        private volatile Throwable invalid;
+        private boolean done;
+
+        StreamSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalid = new IllegalArgumentException("Subscriber requested " + n + " items, see rule 3.9");
+            } else {
+                long current, next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            close();
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            while (!done && !cancelled) {
+                if (invalid != null) {
+                    terminate(invalid);
+                    return;
+                }
+                if (demand.get() == 0) return;
+
+                final T item;
+                try {
+                    if (source == null) {
+                        source = opener.open();
+                        if (cancelled) {
+                            close();
+                            return;
+                        }
+                    }
+                    item = source.next();
+                } catch (IOException | RuntimeException e) {
+                    if (!cancelled) terminate(e);
+                    return;
+                }
+                if (item == null) {
+                    terminate(null);
+                    return;
+                }
+                subscriber.onNext(item);
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+            }
+        }
+
+        private void terminate(Throwable failure) {
+            done = true;
+            close();
+            if (failure != null) {
+                subscriber.onError(failure);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+
+        private void close() {
+            final Source<T> s = source;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+}
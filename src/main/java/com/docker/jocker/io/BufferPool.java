@@ -0,0 +1,60 @@
+package com.docker.jocker.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct {@link ByteBuffer}s used to move bulk data between sockets and files. Direct buffers are costly to
+ * allocate and only released by GC, so they are recycled rather than allocated per transfer. At most
+ * <code>maxIdle</code> buffers are retained, extra ones are left to GC on release.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** pool shared by all clients, for transfers to and from disk */
+    public static final BufferPool DEFAULT = new BufferPool(DEFAULT_BUFFER_SIZE, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final int bufferSize;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return a cleared direct buffer, to be returned with {@link #release(ByteBuffer)}
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer buffer = idle.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        idleCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) return;
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(buffer);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    int idleCount() {
+        return idleCount.get();
+    }
+}
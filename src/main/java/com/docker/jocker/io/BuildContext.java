@@ -0,0 +1,227 @@
+package com.docker.jocker.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Build context from a local directory, excluding files matched by its <code>.dockerignore</code>, to be sent to
+ * {@link com.docker.jocker.DockerClient#imageBuild}.
+ * <p>
+ * Directory tree is walked in parallel on a {@link ForkJoinPool}, one task per directory. Files are only read when
+ * archive is streamed, or to compute {@link #digest()}: a hash of paths, permissions and content of the context, which
+ * doesn't depend on modification times, so an unchanged context can be detected without sending it to daemon.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class BuildContext {
+
+    public static final String DEFAULT_DOCKERFILE = "Dockerfile";
+
+    private final Path dir;
+    private final DockerIgnore ignore;
+    private final ForkJoinPool pool;
+    private List<Entry> entries;
+    private String digest;
+
+    public BuildContext(Path dir) throws IOException {
+        this(dir, DEFAULT_DOCKERFILE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param dockerfile path of Dockerfile relative to context, which is always sent, like <code>.dockerignore</code>
+     */
+    public BuildContext(Path dir, String dockerfile, ForkJoinPool pool) throws IOException {
+        this.dir = dir;
+        this.ignore = DockerIgnore.of(dir).keep(dockerfile).keep(DockerIgnore.FILE_NAME);
+        this.pool = pool;
+    }
+
+    /**
+     * @return archive of context, files are read from disk as it is written
+     */
+    public synchronized TarArchive archive() throws IOException {
+        final TarArchive archive = new TarArchive();
+        for (Entry entry : entries()) {
+            archive.addEntry(entry.path, entry.name);
+        }
+        return archive;
+    }
+
+    /**
+     * @return archive of context as a stream, produced as it is read
+     */
+    public InputStream openStream() throws IOException {
+        return archive().openStream();
+    }
+
+    /**
+     * @return <code>sha256:</code> digest of context, computed once, hashing files in parallel
+     */
+    public synchronized String digest() throws IOException {
+        if (digest != null) return digest;
+        final List<Entry> entries = entries();
+        try {
+            pool.submit(() -> entries.parallelStream().forEach(entry -> {
+                try {
+                    entry.hash = hash(entry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing build context", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof UncheckedIOException
+                    ? ((UncheckedIOException) e.getCause()).getCause()
+                    : new IOException("Failed to hash build context", e.getCause());
+        }
+
+        final MessageDigest context = Sha256.digest();
+        for (Entry entry : entries) {
+            context.update((entry.name + '\0' + entry.hash + '\n').getBytes(UTF_8));
+        }
+        digest = "sha256:" + Sha256.hex(context.digest());
+        return digest;
+    }
+
+    /**
+     * @return <code>sha256:</code> digest of context and <code>parameters</code>, typically build options
+     */
+    public String digest(String parameters) throws IOException {
+        final MessageDigest digest = Sha256.digest();
+        digest.update((digest() + '\n' + parameters).getBytes(UTF_8));
+        return "sha256:" + Sha256.hex(digest.digest());
+    }
+
+    /**
+     * @return entries in archive, parents first, by path relative to context
+     */
+    synchronized List<String> names() throws IOException {
+        final List<String> names = new ArrayList<>();
+        for (Entry entry : entries()) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    private List<Entry> entries() throws IOException {
+        if (entries == null) {
+            try {
+                entries = pool.invoke(new Walk(dir, ""));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * List a directory, and fork a task for each sub-directory which may contain files to send.
+     */
+    private class Walk extends RecursiveTask<List<Entry>> {
+
+        private final Path path;
+        private final String name;
+
+        Walk(Path path, String name) {
+            this.path = path;
+            this.name = name;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            // sorted, so archive and digest don't depend on file system order
+            final TreeMap<String, Path> children = new TreeMap<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    children.put(child.getFileName().toString(), child);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            final List<Object> parts = new ArrayList<>();
+            for (Map.Entry<String, Path> child : children.entrySet()) {
+                final String childName = name.isEmpty() ? child.getKey() : name + '/' + child.getKey();
+                final BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child.getValue(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                final boolean excluded = ignore.isExcluded(childName);
+                if (attrs.isDirectory()) {
+                    if (excluded && !ignore.hasExceptions()) continue;
+                    if (!excluded) parts.add(new Entry(child.getValue(), childName, attrs));
+                    final Walk walk = new Walk(child.getValue(), childName);
+                    walk.fork();
+                    parts.add(walk);
+                } else if (!excluded && (attrs.isRegularFile() || attrs.isSymbolicLink())) {
+                    parts.add(new Entry(child.getValue(), childName, attrs));
+                }
+            }
+
+            final List<Entry> entries = new ArrayList<>();
+            for (Object part : parts) {
+                if (part instanceof Walk) {
+                    entries.addAll(((Walk) part).join());
+                } else {
+                    entries.add((Entry) part);
+                }
+            }
+            return entries;
+        }
+    }
+
+    private static String hash(Entry entry) throws IOException {
+        final StringBuilder s = new StringBuilder();
+        s.append(entry.type);
+        try {
+            s.append(' ').append(PosixFilePermissions.toString(Files.getPosixFilePermissions(entry.path, LinkOption.NOFOLLOW_LINKS)));
+        } catch (UnsupportedOperationException e) {
+            // not a posix file system
+        }
+        switch (entry.type) {
+            case 'l':
+                s.append(' ').append(Files.readSymbolicLink(entry.path));
+                break;
+            case 'f':
+                s.append(' ').append(Sha256.hash(entry.path));
+                break;
+            default:
+        }
+        return s.toString();
+    }
+
+    private static class Entry {
+        final Path path;
+        final String name;
+        /** <code>d</code>irectory, <code>f</code>ile or symbolic <code>l</code>ink */
+        final char type;
+        String hash;
+
+        Entry(Path path, String name, BasicFileAttributes attrs) {
+            this.path = path;
+            this.name = name;
+            this.type = attrs.isDirectory() ? 'd' : attrs.isSymbolicLink() ? 'l' : 'f';
+        }
+    }
+}
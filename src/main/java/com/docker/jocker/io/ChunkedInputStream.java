@@ -1,18 +1,25 @@
 package com.docker.jocker.io;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
  * Implement https://en.wikipedia.org/wiki/Chunked_transfer_encoding
+ * Chunk content is read straight into caller's buffer. Underlying stream is expected to be buffered, typically
+ * {@link HttpInputStream}, as chunk headers are parsed byte per byte.
  */
-public class ChunkedInputStream extends InputStream {
+public class ChunkedInputStream extends InputStream implements ReadableByteChannel {
 
-    private int next = 0;
+    private long next = 0;
     private boolean eof = false;
     private final InputStream chunked;
     private boolean first = true;
+    private boolean closed;
+    private byte[] transfer;
 
     public ChunkedInputStream(InputStream chunked) {
         this.chunked = chunked;
@@ -25,44 +32,132 @@ public class ChunkedInputStream extends InputStream {
     @Override
     public int read() throws IOException {
         if (readInteral() < 0) return -1;
+        final int c = chunked.read();
+        if (c < 0) throw new EOFException("Unexpected end of chunked stream");
         next--;
-        return chunked.read();
+        return c;
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
         if (readInteral() < 0) return -1;
-        len = Math.min(next, len);
-        byte[] buff = new byte[len];
-        final int read = chunked.read(buff, 0, len);
-        System.arraycopy(buff, 0, b, off, read);
+        final int read = chunked.read(b, off, (int) Math.min(next, len));
+        if (read < 0) throw new EOFException("Unexpected end of chunked stream");
         next -= read;
         return read;
     }
 
-    private int readInteral() throws IOException {
+    /**
+     * Read chunk content into a {@link ByteBuffer}. Heap buffers are filled in place. Direct buffers are filled
+     * straight from underlying channel if stream is one, typically {@link HttpInputStream}, otherwise through a
+     * transfer array allocated once for this stream.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) return 0;
+        if (dst.hasArray()) {
+            final int read = read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (read > 0) dst.position(dst.position() + read);
+            return read;
+        }
+        if (chunked instanceof ReadableByteChannel) {
+            if (readInteral() < 0) return -1;
+            final int limit = dst.limit();
+            if (dst.remaining() > next) {
+                dst.limit(dst.position() + (int) next);
+            }
+            try {
+                final int read = ((ReadableByteChannel) chunked).read(dst);
+                if (read < 0) throw new EOFException("Unexpected end of chunked stream");
+                next -= read;
+                return read;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+        if (transfer == null) {
+            transfer = new byte[8 * 1024];
+        }
+        final int read = read(transfer, 0, Math.min(transfer.length, dst.remaining()));
+        if (read > 0) dst.put(transfer, 0, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || readInteral() < 0) return 0;
+        final long skipped = chunked.skip(Math.min(next, n));
+        next -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (eof) return 0;
+        return (int) Math.min(next, chunked.available());
+    }
+
+    private long readInteral() throws IOException {
         if (eof) return -1;
         if (next > 0) return next;
         if (first) first = false;
-        else readLine(); // CTRLF at the end of previous chunk
+        else skipLine(); // CTRLF at the end of previous chunk
 
-        final String chunk = readLine();
-        next = Integer.parseInt(chunk, 16);
+        next = readChunkSize();
         if (next == 0 /* EOF */) {
             eof = true;
-            readLine(); // last CTRLF
+            // optional trailers up to empty line
+            while (skipLine() > 0);
             return -1;
         }
         return next;
     }
 
-    private String readLine() throws IOException {
-        StringBuilder s = new StringBuilder();
-        char c;
-        while((c = (char) chunked.read()) != '\r') {
-            s.append(c);
+    /**
+     * Parse chunk size as hexadecimal digits, ignoring chunk extensions.
+     */
+    private long readChunkSize() throws IOException {
+        long size = 0;
+        int digits = 0;
+        int c;
+        while ((c = chunked.read()) != '\n') {
+            if (c < 0) throw new EOFException("Unexpected end of chunked stream");
+            final int d = Character.digit(c, 16);
+            if (d >= 0) {
+                size = (size << 4) + d;
+                digits++;
+            } else if (c == ';') {
+                skipLine();
+                break;
+            } else if (c != '\r' && c != ' ') {
+                throw new IOException("Invalid chunk size character 0x" + Integer.toHexString(c));
+            }
+        }
+        if (digits == 0) throw new IOException("Missing chunk size");
+        return size;
+    }
+
+    /**
+     * @return number of bytes in line, excluding CRLF
+     */
+    private int skipLine() throws IOException {
+        int length = 0;
+        int c;
+        while ((c = chunked.read()) != '\n') {
+            if (c < 0) throw new EOFException("Unexpected end of chunked stream");
+            if (c != '\r') length++;
         }
-        chunked.read(); // '\n'
-        return s.toString();
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
     }
 }
@@ -0,0 +1,91 @@
+package com.docker.jocker.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Write an HTTP request body with https://en.wikipedia.org/wiki/Chunked_transfer_encoding, for payloads which size
+ * isn't known up-front. Writes are buffered so a chunk is sent once buffer is full, or on {@link #flush()}.
+ * {@link #close()} sends the last chunk, but doesn't close underlying stream, so connection can be reused.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ChunkedOutputStream extends OutputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+    private static final byte[] CRLF = "\r\n".getBytes(US_ASCII);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    public ChunkedOutputStream(OutputStream out) {
+        this(out, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedOutputStream(OutputStream out, int chunkSize) {
+        this.out = out;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            writeChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        while (len > 0) {
+            if (count == 0 && len >= buffer.length) {
+                // large write, send as a chunk without copying
+                writeChunk(b, off, len);
+                return;
+            }
+            final int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == buffer.length) {
+                writeChunk();
+            }
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        writeChunk(buffer, 0, count);
+        count = 0;
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return; // would be read as last chunk
+        out.write(Integer.toHexString(len).getBytes(US_ASCII));
+        out.write(CRLF);
+        out.write(b, off, len);
+        out.write(CRLF);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeChunk();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        writeChunk();
+        out.write(LAST_CHUNK);
+        out.flush();
+    }
+}
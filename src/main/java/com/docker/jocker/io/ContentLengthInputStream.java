@@ -2,32 +2,85 @@ package com.docker.jocker.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
  */
-public class ContentLengthInputStream extends InputStream {
+public class ContentLengthInputStream extends InputStream implements ReadableByteChannel {
 
     private final InputStream in;
-    private int length;
+    private ReadableByteChannel channel;
+    private long length;
+    private boolean closed;
 
-    public ContentLengthInputStream(InputStream in, int length) {
+    public ContentLengthInputStream(InputStream in, long length) {
         this.in = in;
         this.length = length;
     }
 
+    public boolean isEof() {
+        return length <= 0;
+    }
+
     @Override
     public int read() throws IOException {
         if (length <= 0) return -1;
-        length--;
-        return in.read();
+        final int c = in.read();
+        if (c >= 0) length--;
+        return c;
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
         if (length <= 0) return -1;
-        final int read = in.read(b, off, Math.min(length, len));
+        final int read = in.read(b, off, (int) Math.min(length, len));
+        if (read < 0) return -1;
         length -= read;
         return read;
     }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || length <= 0) return 0;
+        final long skipped = in.skip(Math.min(n, length));
+        length -= skipped;
+        return skipped;
+    }
+
+    /**
+     * Read body into a {@link ByteBuffer}, straight from underlying channel if stream is one, typically
+     * {@link HttpInputStream}.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (length <= 0) return -1;
+        if (!dst.hasRemaining()) return 0;
+        if (channel == null) {
+            channel = in instanceof ReadableByteChannel ? (ReadableByteChannel) in : Channels.newChannel(in);
+        }
+        final int limit = dst.limit();
+        if (dst.remaining() > length) {
+            dst.limit(dst.position() + (int) length);
+        }
+        try {
+            final int read = channel.read(dst);
+            if (read > 0) length -= read;
+            return read;
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
 }
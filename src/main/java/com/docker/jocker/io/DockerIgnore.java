@@ -0,0 +1,176 @@
+package com.docker.jocker.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Exclusion rules from a <a href="https://docs.docker.com/engine/reference/builder/#dockerignore-file">.dockerignore</a>
+ * file, matched like docker CLI does: <code>*</code> and <code>?</code> don't match <code>/</code>, <code>**</code>
+ * matches any number of directories, a path is also excluded if one of its parent directories is, and patterns
+ * starting with <code>!</code> re-include paths. Last matching pattern wins.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class DockerIgnore {
+
+    public static final String FILE_NAME = ".dockerignore";
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    private DockerIgnore() {
+    }
+
+    /**
+     * @return rules from <code>.dockerignore</code> in context directory, if any
+     */
+    public static DockerIgnore of(Path dir) throws IOException {
+        final Path file = dir.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) return parse("");
+        return parse(new String(Files.readAllBytes(file), UTF_8));
+    }
+
+    public static DockerIgnore parse(String content) throws IOException {
+        final DockerIgnore ignore = new DockerIgnore();
+        try (BufferedReader r = new BufferedReader(new StringReader(content))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                ignore.add(line);
+            }
+        }
+        return ignore;
+    }
+
+    private void add(String pattern) throws IOException {
+        final boolean exception = pattern.startsWith("!");
+        if (exception) {
+            pattern = pattern.substring(1).trim();
+            if (pattern.isEmpty()) throw new IOException("Illegal exclusion pattern: \"!\"");
+        }
+        try {
+            rules.add(new Rule(compile(clean(pattern)), exception));
+        } catch (PatternSyntaxException e) {
+            throw new IOException("Illegal pattern: " + pattern, e);
+        }
+    }
+
+    /**
+     * Make sure <code>path</code>, typically Dockerfile, is sent to daemon even if excluded, like docker CLI does.
+     */
+    public DockerIgnore keep(String path) throws IOException {
+        if (isExcluded(path)) {
+            add("!" + path);
+        }
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if some patterns re-include paths, so content of an excluded directory still has to
+     * be checked
+     */
+    public boolean hasExceptions() {
+        for (Rule rule : rules) {
+            if (rule.exception) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param path relative to context directory, using <code>/</code> as separator
+     */
+    public boolean isExcluded(String path) {
+        path = clean(path);
+        boolean excluded = false;
+        for (Rule rule : rules) {
+            if (matches(rule.pattern, path)) {
+                excluded = !rule.exception;
+            }
+        }
+        return excluded;
+    }
+
+    private static boolean matches(Pattern pattern, String path) {
+        if (pattern.matcher(path).matches()) return true;
+        // also match parent directories
+        for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+            if (pattern.matcher(path.substring(0, i)).matches()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Normalize path like Go's <code>filepath.Clean</code>, without leading <code>/</code>.
+     */
+    static String clean(String path) {
+        final List<String> segments = new ArrayList<>();
+        for (String s : path.split("/")) {
+            if (s.isEmpty() || s.equals(".")) continue;
+            if (s.equals("..")) {
+                if (!segments.isEmpty()) segments.remove(segments.size() - 1);
+                continue;
+            }
+            segments.add(s);
+        }
+        return segments.isEmpty() ? "." : String.join("/", segments);
+    }
+
+    static Pattern compile(String pattern) {
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                        i++;
+                        if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '/') i++;
+                        regex.append(i + 1 == pattern.length() ? ".*" : "(.*/)?");
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '\\':
+                    if (i + 1 < pattern.length()) {
+                        regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+                    }
+                    break;
+                case '[':
+                case ']':
+                case '-':
+                case '^':
+                    // character classes, as in Go's filepath.Match
+                    regex.append(c);
+                    break;
+                default:
+                    if (Character.isLetterOrDigit(c) || c == '/') {
+                        regex.append(c);
+                    } else {
+                        regex.append('\\').append(c);
+                    }
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static class Rule {
+        final Pattern pattern;
+        final boolean exception;
+
+        Rule(Pattern pattern, boolean exception) {
+            this.pattern = pattern;
+            this.exception = exception;
+        }
+    }
+}
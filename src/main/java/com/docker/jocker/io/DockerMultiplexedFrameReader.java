@@ -0,0 +1,117 @@
+package com.docker.jocker.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Read an <code>application/vnd.docker.raw-stream</code> frame by frame, as described on
+ * <a href="https://docs.docker.com/engine/api/v1.40/#operation/ContainerAttach">Docker API documentation</a>.
+ * <p>
+ * Stream is read in bulk into a single buffer, and frames payload is exposed as a {@link ByteBuffer} view on this
+ * buffer, so reading frames doesn't allocate nor copy. Payload is only valid until next call to {@link #next()}.
+ * Frames larger than buffer, or only partially received yet, are delivered as consecutive fragments for the same
+ * stream type.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class DockerMultiplexedFrameReader implements Closeable {
+
+    public enum StreamType {
+        STDIN, STDOUT, STDERR
+    }
+
+    static final int HEADER_SIZE = 8;
+    static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+    private static final StreamType[] TYPES = StreamType.values();
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private final ByteBuffer payload;
+    /** buffered bytes are <code>buffer[pos..limit[</code> */
+    private int pos;
+    private int limit;
+    /** bytes of current frame payload not delivered yet */
+    private int remaining;
+    private StreamType type;
+
+    public DockerMultiplexedFrameReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public DockerMultiplexedFrameReader(InputStream in, int bufferSize) {
+        if (bufferSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be larger than frame header");
+        }
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.payload = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Move to next frame, or fragment of current frame.
+     * @return <code>false</code> on EOF
+     */
+    public boolean next() throws IOException {
+        while (remaining == 0) {
+            if (!fill(HEADER_SIZE)) return false;
+            final int t = buffer[pos];
+            if (t < 0 || t >= TYPES.length) {
+                throw new IOException("Unexpected application/vnd.docker.raw-stream frame type " + t);
+            }
+            type = TYPES[t];
+            remaining = ((buffer[pos + 4] & 0xff) << 24) | ((buffer[pos + 5] & 0xff) << 16)
+                      | ((buffer[pos + 6] & 0xff) << 8) | (buffer[pos + 7] & 0xff);
+            pos += HEADER_SIZE;
+        }
+
+        if (!fill(1)) return false;
+        final int n = Math.min(remaining, limit - pos);
+        payload.limit(pos + n).position(pos);
+        pos += n;
+        remaining -= n;
+        return true;
+    }
+
+    /**
+     * Ensure at least <code>count</code> bytes are buffered.
+     * @return <code>false</code> on EOF
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - pos >= count) return true;
+        if (pos == limit) {
+            pos = limit = 0;
+        } else if (pos + count > buffer.length) {
+            // partial header at end of buffer
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        while (limit - pos < count) {
+            final int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) return false;
+            limit += read;
+        }
+        return true;
+    }
+
+    /**
+     * @return type of current frame.
+     */
+    public StreamType getStreamType() {
+        return type;
+    }
+
+    /**
+     * @return current frame payload, backed by this reader buffer. Caller must not modify it.
+     */
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
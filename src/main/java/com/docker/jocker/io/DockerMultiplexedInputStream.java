@@ -3,22 +3,25 @@ package com.docker.jocker.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * De-multiplex an <code>application/vnd.docker.raw-stream</code> as described on
  * <a href="https://docs.docker.com/engine/api/v1.32/#operation/ContainerAttach">Docker API documentation</a>
+ * <p>
+ * Stdout frames are exposed as this stream content, stderr ones are copied to {@link #redirectStderr(OutputStream)}.
  *
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
  */
 public class DockerMultiplexedInputStream extends InputStream {
 
-    private final InputStream multiplexed;
+    private final DockerMultiplexedFrameReader frames;
     private OutputStream stderr;
-    int next;
+    /** stdout payload not read yet */
+    private ByteBuffer next;
 
     public DockerMultiplexedInputStream(InputStream in) {
-        multiplexed = in;
-        next = 0;
+        frames = new DockerMultiplexedFrameReader(in);
         stderr = System.err;
     }
 
@@ -26,58 +29,53 @@ public class DockerMultiplexedInputStream extends InputStream {
         this.stderr = stderr;
     }
 
+    /**
+     * Frame-level access to underlying stream, as an alternative to read this stream. Both can't be mixed.
+     */
+    public DockerMultiplexedFrameReader frames() {
+        return frames;
+    }
+
     @Override
     public int read() throws IOException {
-        readInternal();
-        if (next == 0) {
-            return 0;
-        }
-        next--;
-        return multiplexed.read();
+        if (!readInternal()) return -1;
+        return next.get() & 0xff;
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        readInternal();
-        int byteRead = multiplexed.read(b, off, Math.min(next, len));
-        next -= byteRead;
-        return byteRead;
+        if (len == 0) return 0;
+        if (!readInternal()) return -1;
+        final int n = Math.min(len, next.remaining());
+        next.get(b, off, n);
+        return n;
     }
 
-    private void readInternal() throws IOException {
-        while (next == 0) {
-            byte[] header = new byte[8];
-            int todo = 8;
-            while (todo > 0) {
-                int i = multiplexed.read(header, 8-todo, todo);
-                if (i < 0) return; // EOF
-                todo -= i;
-            }
-
-            int size = ((header[4] & 0xff) << 24) + ((header[5] & 0xff) << 16) + ((header[6] & 0xff) << 8) + (header[7] & 0xff);
-            switch (header[0]) {
-                case 1: // STDOUT
-                    next = size;
+    /**
+     * @return <code>false</code> on EOF
+     */
+    private boolean readInternal() throws IOException {
+        while (next == null || !next.hasRemaining()) {
+            if (!frames.next()) return false;
+            final ByteBuffer payload = frames.getPayload();
+            switch (frames.getStreamType()) {
+                case STDOUT:
+                    next = payload;
                     break;
-                case 2: // STDERR
-                    // not expected. Read payload and dump on stderr for diagnostic
-                    byte[] payload = new byte[size];
-                    int received = 0;
-                    while (received < size) {
-                        int i = multiplexed.read(payload, received, size - received);
-                        if (i < 0) break; // EOF
-                        received += i;
-                    }
-                    stderr.write(payload);
+                case STDERR:
+                    // not expected. Dump on stderr for diagnostic
+                    stderr.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+                    payload.position(payload.limit());
                     break;
                 default:
-                    throw new IOException("Unexpected application/vnd.docker.raw-stream frame type " + header[0]);
+                    throw new IOException("Unexpected application/vnd.docker.raw-stream frame type " + frames.getStreamType());
             }
         }
+        return true;
     }
 
     @Override
     public void close() throws IOException {
-        multiplexed.close();
+        frames.close();
     }
 }
@@ -0,0 +1,210 @@
+package com.docker.jocker.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Buffered stream to read an HTTP response. Status line and headers are parsed in place from the buffer, and body
+ * streams must be read from this stream, so any body content already buffered while reading headers isn't lost.
+ * <p>
+ * As a {@link ReadableByteChannel}, once buffered bytes have been consumed, reads go straight to socket channel when
+ * available, so body can be moved to a direct buffer or file without being copied through heap.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class HttpInputStream extends InputStream implements ReadableByteChannel {
+
+    private final InputStream in;
+    private ReadableByteChannel channel;
+    private final byte[] buffer;
+    private int pos;
+    private int count;
+    private boolean closed;
+
+    public HttpInputStream(InputStream in) {
+        this(in, 8 * 1024);
+    }
+
+    public HttpInputStream(InputStream in, int size) {
+        this(in, null, size);
+    }
+
+    /**
+     * @param channel channel <code>in</code> reads from, if any
+     */
+    public HttpInputStream(InputStream in, ReadableByteChannel channel) {
+        this(in, channel, 8 * 1024);
+    }
+
+    public HttpInputStream(InputStream in, ReadableByteChannel channel, int size) {
+        this.in = in;
+        this.channel = channel;
+        this.buffer = new byte[size];
+    }
+
+    /**
+     * Parse HTTP status line, like <code>HTTP/1.1 200 OK</code>.
+     * @return status code
+     */
+    public int readStatus() throws IOException {
+        final int eol = readLine();
+        int i = pos;
+        while (i < eol && buffer[i] != ' ') i++;
+        int status = 0;
+        for (int j = i + 1; j < i + 4; j++) {
+            final int d = j < eol ? buffer[j] - '0' : -1;
+            if (d < 0 || d > 9) {
+                throw new IOException("Invalid HTTP status line " + new String(buffer, pos, eol - pos, US_ASCII));
+            }
+            status = status * 10 + d;
+        }
+        consumeLine(eol);
+        return status;
+    }
+
+    /**
+     * Parse HTTP headers up to the empty line marking end of headers.
+     * @return headers, with case-insensitive names
+     */
+    public Map<String, String> readHeaders() throws IOException {
+        final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        int eol;
+        while ((eol = readLine()) > pos) {
+            int x = pos;
+            while (x < eol && buffer[x] != ':') x++;
+            int v = x + 1;
+            while (v < eol && buffer[v] == ' ') v++;
+            headers.put(new String(buffer, pos, x - pos, US_ASCII), new String(buffer, v, Math.max(0, eol - v), US_ASCII));
+            consumeLine(eol);
+        }
+        consumeLine(eol);
+        return headers;
+    }
+
+    /**
+     * Make a full line available in buffer starting at <code>pos</code>.
+     * @return index of line end, excluding CRLF
+     */
+    private int readLine() throws IOException {
+        int i = pos;
+        while (true) {
+            for (; i < count; i++) {
+                if (buffer[i] == '\n') {
+                    return i > pos && buffer[i - 1] == '\r' ? i - 1 : i;
+                }
+            }
+            if (pos > 0) {
+                // make room for the rest of this line
+                System.arraycopy(buffer, pos, buffer, 0, count - pos);
+                i -= pos;
+                count -= pos;
+                pos = 0;
+            }
+            if (count == buffer.length) {
+                throw new IOException("HTTP header line exceeds " + buffer.length + " bytes");
+            }
+            if (fill() < 0) {
+                throw new EOFException("Connection closed by daemon");
+            }
+        }
+    }
+
+    private void consumeLine(int eol) {
+        pos = eol;
+        if (pos < count && buffer[pos] == '\r') pos++;
+        pos++; // \n
+    }
+
+    private int fill() throws IOException {
+        final int n = in.read(buffer, count, buffer.length - count);
+        if (n > 0) count += n;
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == count) {
+            pos = count = 0;
+            if (fill() < 0) return -1;
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (pos == count) {
+            if (len >= buffer.length) {
+                // don't copy through buffer for large reads
+                return in.read(b, off, len);
+            }
+            pos = count = 0;
+            if (fill() < 0) return -1;
+        }
+        final int n = Math.min(len, count - pos);
+        System.arraycopy(buffer, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) return 0;
+        if (pos < count) {
+            final int n = Math.min(dst.remaining(), count - pos);
+            dst.put(buffer, pos, n);
+            pos += n;
+            return n;
+        }
+        if (channel == null) {
+            channel = Channels.newChannel(in);
+        }
+        return channel.read(dst);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) return 0;
+        final int buffered = count - pos;
+        if (buffered > 0) {
+            final int skipped = (int) Math.min(n, buffered);
+            pos += skipped;
+            return skipped;
+        }
+        if (channel != null) {
+            // discard into a direct buffer, without copying bytes to heap
+            final ByteBuffer discard = BufferPool.DEFAULT.acquire();
+            try {
+                if (n < discard.capacity()) discard.limit((int) n);
+                return Math.max(channel.read(discard), 0);
+            } finally {
+                BufferPool.DEFAULT.release(discard);
+            }
+        }
+        return in.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (count - pos) + in.available();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        in.close();
+    }
+}
@@ -0,0 +1,214 @@
+package com.docker.jocker.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Incremental HTTP/1.1 response parser for non-blocking I/O: bytes are fed as they are received, and body
+ * content is forwarded (de-chunked) to a {@link Listener}, without being buffered.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class HttpResponseDecoder {
+
+    public interface Listener {
+
+        void headers(int status, Map<String, String> headers) throws IOException;
+
+        /**
+         * Body content. Buffer is only valid during this invocation.
+         */
+        void body(ByteBuffer data) throws IOException;
+
+        void complete() throws IOException;
+    }
+
+    private enum State { STATUS, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILER, UNTIL_EOF, DONE }
+
+    private final Listener listener;
+    private State state = State.STATUS;
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private boolean lineComplete;
+    private int status;
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private long remaining;
+
+    public HttpResponseDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Consume available bytes.
+     * @return <code>true</code> once the response has been fully received
+     */
+    public boolean decode(ByteBuffer in) throws IOException {
+        while (in.hasRemaining() && state != State.DONE) {
+            switch (state) {
+                case STATUS:
+                    if (readLine(in)) {
+                        status = parseStatus();
+                        state = State.HEADERS;
+                    }
+                    break;
+                case HEADERS:
+                    if (readLine(in)) {
+                        if (lineLength == 0) {
+                            endOfHeaders();
+                        } else {
+                            parseHeader();
+                        }
+                    }
+                    break;
+                case BODY:
+                    if (forward(in) == 0) {
+                        done();
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(in)) {
+                        remaining = parseChunkSize();
+                        state = remaining == 0 ? State.TRAILER : State.CHUNK_DATA;
+                    }
+                    break;
+                case CHUNK_DATA:
+                    if (forward(in) == 0) {
+                        state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_END:
+                    if (readLine(in)) {
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILER:
+                    if (readLine(in) && lineLength == 0) {
+                        done();
+                    }
+                    break;
+                case UNTIL_EOF:
+                    listener.body(in);
+                    in.position(in.limit());
+                    break;
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * Connection has been closed by peer.
+     */
+    public void eof() throws IOException {
+        if (state == State.UNTIL_EOF) {
+            done();
+        } else if (state != State.DONE) {
+            throw new EOFException("Connection closed before HTTP response was complete");
+        }
+    }
+
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    private void endOfHeaders() throws IOException {
+        listener.headers(status, headers);
+        if (status == 204 || status == 304) {
+            done();
+        } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            state = State.CHUNK_SIZE;
+        } else if (headers.containsKey("Content-Length")) {
+            remaining = Long.parseLong(headers.get("Content-Length").trim());
+            state = State.BODY;
+            if (remaining == 0) done();
+        } else {
+            state = State.UNTIL_EOF;
+        }
+    }
+
+    private void done() throws IOException {
+        state = State.DONE;
+        listener.complete();
+    }
+
+    /**
+     * Forward up to <code>remaining</code> bytes to listener.
+     * @return bytes left to forward
+     */
+    private long forward(ByteBuffer in) throws IOException {
+        final int n = (int) Math.min(remaining, in.remaining());
+        final int limit = in.limit();
+        in.limit(in.position() + n);
+        final ByteBuffer slice = in.slice();
+        in.position(in.limit());
+        in.limit(limit);
+        listener.body(slice);
+        remaining -= n;
+        return remaining;
+    }
+
+    /**
+     * Accumulate bytes up to end of line, stripping CRLF.
+     * @return <code>true</code> when a full line has been read
+     */
+    private boolean readLine(ByteBuffer in) {
+        if (lineComplete) {
+            lineLength = 0;
+            lineComplete = false;
+        }
+        while (in.hasRemaining()) {
+            final byte b = in.get();
+            if (b == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') lineLength--;
+                lineComplete = true;
+                return true;
+            }
+            if (lineLength == line.length) {
+                final byte[] bigger = new byte[line.length * 2];
+                System.arraycopy(line, 0, bigger, 0, lineLength);
+                line = bigger;
+            }
+            line[lineLength++] = b;
+        }
+        return false;
+    }
+
+    private int parseStatus() throws IOException {
+        // HTTP/1.1 200 OK
+        int i = 0;
+        while (i < lineLength && line[i] != ' ') i++;
+        int code = 0;
+        for (int j = i + 1; j < i + 4 && j < lineLength; j++) {
+            final int d = line[j] - '0';
+            if (d < 0 || d > 9) throw new IOException("Invalid HTTP status line " + new String(line, 0, lineLength, US_ASCII));
+            code = code * 10 + d;
+        }
+        return code;
+    }
+
+    private void parseHeader() {
+        int x = 0;
+        while (x < lineLength && line[x] != ':') x++;
+        final String name = new String(line, 0, x, US_ASCII);
+        int v = x + 1;
+        while (v < lineLength && line[v] == ' ') v++;
+        headers.put(name, new String(line, v, lineLength - v, US_ASCII));
+    }
+
+    private long parseChunkSize() throws IOException {
+        long size = 0;
+        for (int i = 0; i < lineLength; i++) {
+            final int d = Character.digit(line[i], 16);
+            if (d < 0) {
+                if (line[i] == ';' || line[i] == ' ') break; // chunk extension
+                throw new IOException("Invalid chunk size " + new String(line, 0, lineLength, US_ASCII));
+            }
+            size = (size << 4) + d;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,171 @@
+package com.docker.jocker.io;
+
+import com.docker.jocker.io.DockerMultiplexedFrameReader.StreamType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Split a container log stream into lines, as bytes are received. Stream is de-multiplexed if container has no TTY,
+ * and lines can span multiplexed frames or received buffers. With <code>timestamps</code> set, leading RFC3339
+ * timestamp is parsed and removed from line.
+ * <p>
+ * Lines are delivered without trailing line terminator, as a view on received buffer, or on a reused internal buffer
+ * for lines received in many parts, so decoding doesn't allocate. Line is only valid during consumer invocation.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class LogLineDecoder {
+
+    /** timestamp reported for lines without a valid timestamp */
+    public static final long NO_TIMESTAMP = Rfc3339.INVALID;
+
+    public interface LineConsumer {
+        /**
+         * @param timestamp nanoseconds since epoch, or {@link #NO_TIMESTAMP}
+         */
+        void accept(StreamType stream, long timestamp, ByteBuffer line);
+    }
+
+    private final boolean multiplexed;
+    private final boolean timestamps;
+    private final LineConsumer consumer;
+
+    private final byte[] header = new byte[DockerMultiplexedFrameReader.HEADER_SIZE];
+    private int headerSize;
+    private int frameRemaining;
+    private Partial frame;
+
+    private final Partial stdout = new Partial(StreamType.STDOUT);
+    private final Partial stderr = new Partial(StreamType.STDERR);
+
+    /**
+     * @param multiplexed <code>true</code> for container without a TTY
+     * @param timestamps logs were requested with <code>timestamps=true</code>
+     */
+    public LogLineDecoder(boolean multiplexed, boolean timestamps, LineConsumer consumer) {
+        this.multiplexed = multiplexed;
+        this.timestamps = timestamps;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Decode received bytes, delivering complete lines to consumer. Buffer is fully consumed.
+     */
+    public void decode(ByteBuffer data) {
+        if (!multiplexed) {
+            lines(stdout, data, data.limit());
+            return;
+        }
+        while (data.hasRemaining()) {
+            if (frameRemaining == 0) {
+                while (headerSize < header.length && data.hasRemaining()) {
+                    header[headerSize++] = data.get();
+                }
+                if (headerSize < header.length) return;
+                headerSize = 0;
+                frame = header[0] == 2 ? stderr : stdout;
+                frameRemaining = ((header[4] & 0xff) << 24) | ((header[5] & 0xff) << 16)
+                               | ((header[6] & 0xff) << 8) | (header[7] & 0xff);
+                continue;
+            }
+            final int n = Math.min(frameRemaining, data.remaining());
+            frameRemaining -= n;
+            lines(frame, data, data.position() + n);
+        }
+    }
+
+    /**
+     * Deliver last lines if they have no line terminator, at end of stream.
+     */
+    public void flush() {
+        flush(stdout);
+        flush(stderr);
+    }
+
+    private void flush(Partial partial) {
+        if (partial.length > 0) {
+            emit(partial.type, partial.buffer, 0, partial.length);
+            partial.length = 0;
+        }
+    }
+
+    /**
+     * Split <code>data[position..end[</code> into lines.
+     */
+    private void lines(Partial partial, ByteBuffer data, int end) {
+        int pos = data.position();
+        while (pos < end) {
+            final int eol = indexOf(data, pos, end, (byte) '\n');
+            if (eol < 0) {
+                partial.append(data, pos, end);
+                break;
+            }
+            if (partial.length == 0) {
+                emit(partial.type, data, pos, eol);
+            } else {
+                partial.append(data, pos, eol);
+                emit(partial.type, partial.buffer, 0, partial.length);
+                partial.length = 0;
+            }
+            pos = eol + 1;
+        }
+        data.position(end);
+    }
+
+    private void emit(StreamType type, ByteBuffer buffer, int from, int to) {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        long timestamp = NO_TIMESTAMP;
+        if (timestamps) {
+            final int space = indexOf(buffer, from, to, (byte) ' ');
+            timestamp = Rfc3339.parseNanos(buffer, from, space < 0 ? to : space);
+            if (timestamp != NO_TIMESTAMP) {
+                from = space < 0 ? to : space + 1;
+            }
+        }
+
+        // expose line as a view on buffer, restoring bounds once consumed
+        final int position = buffer.position();
+        final int limit = buffer.limit();
+        buffer.limit(to).position(from);
+        try {
+            consumer.accept(type, timestamp, buffer);
+        } finally {
+            buffer.limit(limit).position(position);
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Beginning of a line received in many parts.
+     */
+    private static class Partial {
+
+        final StreamType type;
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int length;
+
+        Partial(StreamType type) {
+            this.type = type;
+        }
+
+        void append(ByteBuffer data, int from, int to) {
+            final int n = to - from;
+            if (length + n > buffer.capacity()) {
+                final ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, length + n));
+                larger.put(buffer.array(), 0, length);
+                buffer = larger;
+            }
+            for (int i = from; i < to; i++) {
+                buffer.put(length++, data.get(i));
+            }
+        }
+    }
+}
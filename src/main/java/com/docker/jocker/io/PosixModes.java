@@ -0,0 +1,44 @@
+package com.docker.jocker.io;
+
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Convert between tar entry modes and {@link PosixFilePermission}s, without going through the <code>rwxr-xr-x</code>
+ * string form.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public final class PosixModes {
+
+    private PosixModes() {
+    }
+
+    /**
+     * @return permission bits of <code>permissions</code>, like <code>0755</code>
+     */
+    public static int toMode(Set<PosixFilePermission> permissions) {
+        int mode = 0;
+        for (PosixFilePermission p : permissions) {
+            mode |= bit(p);
+        }
+        return mode;
+    }
+
+    /**
+     * @return permissions set in <code>mode</code>, other bits (file type, setuid, etc) are ignored
+     */
+    public static Set<PosixFilePermission> toPermissions(int mode) {
+        final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (PosixFilePermission p : PosixFilePermission.values()) {
+            if ((mode & bit(p)) != 0) permissions.add(p);
+        }
+        return permissions;
+    }
+
+    private static int bit(PosixFilePermission permission) {
+        // enum is declared in owner/group/others read/write/execute order
+        return 0400 >> permission.ordinal();
+    }
+}
@@ -0,0 +1,103 @@
+package com.docker.jocker.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parse RFC3339 timestamps, as set by docker daemon on log lines (Go's <code>RFC3339Nano</code> layout), straight
+ * from bytes, without allocating.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public final class Rfc3339 {
+
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private Rfc3339() {
+    }
+
+    /**
+     * Parse <code>2006-01-02T15:04:05.999999999Z07:00</code> from <code>buffer[from..to[</code>, using absolute access
+     * so buffer position isn't changed. Fraction of second is optional and can have any number of digits.
+     * @return nanoseconds since epoch, or {@link #INVALID}
+     */
+    public static long parseNanos(ByteBuffer buffer, int from, int to) {
+        if (to - from < 20) return INVALID;
+        final int year = digits(buffer, from, 4);
+        final int month = digits(buffer, from + 5, 2);
+        final int day = digits(buffer, from + 8, 2);
+        final int hour = digits(buffer, from + 11, 2);
+        final int minute = digits(buffer, from + 14, 2);
+        final int second = digits(buffer, from + 17, 2);
+        if ((year | month | day | hour | minute | second) < 0
+                || buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-' || buffer.get(from + 10) != 'T'
+                || buffer.get(from + 13) != ':' || buffer.get(from + 16) != ':'
+                || month < 1 || month > 12 || day < 1 || day > 31) {
+            return INVALID;
+        }
+
+        int i = from + 19;
+        long nanos = 0;
+        if (buffer.get(i) == '.') {
+            i++;
+            int n = 0;
+            for (; i < to && isDigit(buffer.get(i)); i++) {
+                if (n < 9) {
+                    nanos = nanos * 10 + buffer.get(i) - '0';
+                    n++;
+                }
+            }
+            if (n == 0) return INVALID;
+            for (; n < 9; n++) {
+                nanos *= 10;
+            }
+        }
+
+        if (i >= to) return INVALID;
+        int offset = 0;
+        final byte zone = buffer.get(i);
+        if (zone == 'Z') {
+            i++;
+        } else if ((zone == '+' || zone == '-') && i + 6 <= to && buffer.get(i + 3) == ':') {
+            final int h = digits(buffer, i + 1, 2);
+            final int m = digits(buffer, i + 4, 2);
+            if ((h | m) < 0) return INVALID;
+            offset = (zone == '+' ? 1 : -1) * (h * 3600 + m * 60);
+            i += 6;
+        } else {
+            return INVALID;
+        }
+        if (i != to) return INVALID;
+
+        final long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offset;
+        return seconds * 1_000_000_000L + nanos;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * @return decimal value of <code>count</code> digits, or -1
+     */
+    private static int digits(ByteBuffer buffer, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            final byte b = buffer.get(i);
+            if (!isDigit(b)) return -1;
+            value = value * 10 + b - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 in proleptic Gregorian calendar, see http://howardhinnant.github.io/date_algorithms.html
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yoe = y - era * 400;
+        final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+}
@@ -0,0 +1,178 @@
+package com.docker.jocker.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An InputStream fed by another thread through a bounded ring buffer. What happens when buffer is full is set by
+ * {@link StreamDemultiplexer.Backpressure}. When spilling to disk, ring holds oldest bytes and spill file the most
+ * recent ones, so reader gets them in order.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+class RingBufferInputStream extends InputStream {
+
+    private final byte[] ring;
+    private final StreamDemultiplexer.Backpressure backpressure;
+    /** buffered bytes are <code>count</code> bytes from <code>head</code>, wrapping at end of ring */
+    private int head;
+    private int count;
+    private long dropped;
+
+    private FileChannel spill;
+    private long spillRead;
+    private long spillWrite;
+
+    /** writer has no more data */
+    private boolean eof;
+    private IOException failure;
+    /** reader isn't interested anymore */
+    private boolean closed;
+
+    RingBufferInputStream(int capacity, StreamDemultiplexer.Backpressure backpressure) {
+        this.ring = new byte[capacity];
+        this.backpressure = backpressure;
+    }
+
+    /**
+     * Buffer <code>src</code> remaining bytes, blocking if backpressure is {@link StreamDemultiplexer.Backpressure#BLOCK}
+     * until reader makes room.
+     */
+    synchronized void write(ByteBuffer src) throws IOException, InterruptedException {
+        while (src.hasRemaining()) {
+            if (closed) {
+                src.position(src.limit());
+                return;
+            }
+            if (spillWrite > spillRead) {
+                // reader hasn't caught up with spilled bytes yet, keep order
+                spill(src);
+                return;
+            }
+
+            int free = ring.length - count;
+            if (free < src.remaining() && backpressure == StreamDemultiplexer.Backpressure.DROP_OLDEST) {
+                final int excess = src.remaining() - ring.length;
+                if (excess > 0) {
+                    src.position(src.position() + excess);
+                    dropped += excess;
+                }
+                final int n = Math.min(count, src.remaining() - free);
+                head = (head + n) % ring.length;
+                count -= n;
+                dropped += n;
+                free += n;
+            }
+
+            if (free == 0) {
+                if (backpressure == StreamDemultiplexer.Backpressure.SPILL) {
+                    spill(src);
+                    return;
+                }
+                wait();
+                continue;
+            }
+
+            final int tail = (head + count) % ring.length;
+            final int n = Math.min(src.remaining(), Math.min(free, ring.length - tail));
+            src.get(ring, tail, n);
+            count += n;
+            notifyAll();
+        }
+    }
+
+    private void spill(ByteBuffer src) throws IOException {
+        if (spill == null) {
+            final Path file = Files.createTempFile("docker-stream", ".spill");
+            spill = FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+        }
+        while (src.hasRemaining()) {
+            spillWrite += spill.write(src, spillWrite);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Signal end of stream to reader, once buffered bytes have been consumed.
+     * @param failure error to report to reader, <code>null</code> on regular EOF
+     */
+    synchronized void complete(IOException failure) {
+        this.eof = true;
+        this.failure = failure;
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (count == 0 && spillRead == spillWrite) {
+            if (closed) throw new IOException("Stream closed");
+            if (eof) {
+                if (failure != null) throw failure;
+                return -1;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        if (count > 0) {
+            final int n = Math.min(len, Math.min(count, ring.length - head));
+            System.arraycopy(ring, head, b, off, n);
+            head = (head + n) % ring.length;
+            count -= n;
+            notifyAll();
+            return n;
+        }
+
+        final int n = spill.read(ByteBuffer.wrap(b, off, (int) Math.min(len, spillWrite - spillRead)), spillRead);
+        spillRead += n;
+        if (spillRead == spillWrite) {
+            // caught up, back to ring
+            spillRead = spillWrite = 0;
+            spill.truncate(0);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        return (int) Math.min(Integer.MAX_VALUE, count + spillWrite - spillRead);
+    }
+
+    /**
+     * @return number of bytes discarded by {@link StreamDemultiplexer.Backpressure#DROP_OLDEST} policy.
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        count = 0;
+        notifyAll();
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            spillRead = spillWrite = 0;
+        }
+    }
+}
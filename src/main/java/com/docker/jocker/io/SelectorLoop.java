@@ -0,0 +1,144 @@
+package com.docker.jocker.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single thread multiplexing many non-blocking channels with a {@link Selector}.
+ * Selector has to be created by the same {@link SelectorProvider} as the registered channels, which for
+ * <code>jnr.unixsocket.UnixSocketChannel</code> is <code>jnr.enxio.channels.NativeSelectorProvider</code>.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class SelectorLoop implements Runnable, Closeable {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+    private volatile boolean running = true;
+
+    public SelectorLoop(SelectorProvider provider, String name) throws IOException {
+        this.selector = provider.openSelector();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Callback for a registered channel, always invoked on the loop thread.
+     */
+    public interface Handler {
+
+        void ready(SelectionKey key) throws IOException;
+
+        void failed(Throwable cause);
+    }
+
+    /**
+     * Run some task on the loop thread.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public void register(SelectableChannel channel, int ops, Handler handler) {
+        execute(() -> {
+            try {
+                channel.register(selector, ops, handler);
+            } catch (IOException e) {
+                handler.failed(e);
+            }
+        });
+    }
+
+    /**
+     * A read buffer shared by all channels registered on this loop. Handlers must consume it synchronously from
+     * {@link Handler#ready(SelectionKey)}.
+     */
+    public ByteBuffer buffer() {
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException | ClosedSelectorException e) {
+                break;
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                final SelectionKey key = it.next();
+                it.remove();
+                final Handler handler = (Handler) key.attachment();
+                try {
+                    if (key.isValid()) {
+                        handler.ready(key);
+                    }
+                } catch (Throwable e) {
+                    close(key);
+                    handler.failed(e);
+                }
+            }
+        }
+        try {
+            if (selector.isOpen()) {
+                for (SelectionKey key : selector.keys()) {
+                    close(key);
+                    ((Handler) key.attachment()).failed(new IOException("Selector loop closed"));
+                }
+            }
+        } finally {
+            // here rather than in close(), which can be called by a handler on loop thread
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+    }
+
+    boolean isOpen() {
+        return selector.isOpen();
+    }
+
+    public static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        if (Thread.currentThread() == thread) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
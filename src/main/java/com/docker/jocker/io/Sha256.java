@@ -0,0 +1,60 @@
+package com.docker.jocker.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 hashing of local files, as used to detect unchanged build contexts and synced files. File content is read
+ * through a pooled direct buffer, so hashing doesn't copy it to heap.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public final class Sha256 {
+
+    private Sha256() {
+    }
+
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return <code>digest</code>, updated with content of <code>file</code>
+     */
+    public static MessageDigest update(MessageDigest digest, Path file) throws IOException {
+        final ByteBuffer buffer = BufferPool.DEFAULT.acquire();
+        try (FileChannel channel = FileChannel.open(file)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+        }
+        return digest;
+    }
+
+    /**
+     * @return lowercase hex SHA-256 of <code>file</code> content
+     */
+    public static String hash(Path file) throws IOException {
+        return hex(update(digest(), file).digest());
+    }
+
+    public static String hex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package com.docker.jocker.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * De-multiplex an <code>application/vnd.docker.raw-stream</code> into independent stdout and stderr streams, so
+ * they can be consumed by distinct threads. A dedicated thread reads frames and dispatches payload into a bounded
+ * buffer for each stream, so a slow consumer only impacts the other one if {@link Backpressure#BLOCK} is set.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class StreamDemultiplexer implements Closeable {
+
+    /**
+     * What to do when a stream buffer is full.
+     */
+    public enum Backpressure {
+        /** stop reading frames until consumer makes room, which also delays the other stream */
+        BLOCK,
+        /** discard oldest buffered bytes */
+        DROP_OLDEST,
+        /** buffer in a temporary file */
+        SPILL
+    }
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final DockerMultiplexedFrameReader frames;
+    private final RingBufferInputStream stdout;
+    private final RingBufferInputStream stderr;
+    private final Thread thread;
+
+    public StreamDemultiplexer(DockerMultiplexedFrameReader frames) {
+        this(frames, DEFAULT_CAPACITY, Backpressure.BLOCK);
+    }
+
+    /**
+     * @param capacity size of each stream buffer
+     */
+    public StreamDemultiplexer(DockerMultiplexedFrameReader frames, int capacity, Backpressure backpressure) {
+        this.frames = frames;
+        this.stdout = new RingBufferInputStream(capacity, backpressure);
+        this.stderr = new RingBufferInputStream(capacity, backpressure);
+        this.thread = new Thread(this::run, "docker-demux");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        IOException failure = null;
+        try {
+            while (frames.next()) {
+                switch (frames.getStreamType()) {
+                    case STDOUT:
+                        stdout.write(frames.getPayload());
+                        break;
+                    case STDERR:
+                        stderr.write(frames.getPayload());
+                        break;
+                    default:
+                        throw new IOException("Unexpected application/vnd.docker.raw-stream frame type " + frames.getStreamType());
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException();
+        }
+        stdout.complete(failure);
+        stderr.complete(failure);
+    }
+
+    public InputStream stdout() {
+        return stdout;
+    }
+
+    public InputStream stderr() {
+        return stderr;
+    }
+
+    /**
+     * @return number of bytes discarded by {@link Backpressure#DROP_OLDEST} policy, for stdout and stderr.
+     */
+    public long getDropped() {
+        return stdout.getDropped() + stderr.getDropped();
+    }
+
+    /**
+     * Close underlying stream and discard buffered bytes.
+     */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        try {
+            frames.close();
+        } finally {
+            stdout.close();
+            stderr.close();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Files and directories to be sent as a tar archive, which is written on the fly from disk, so archive size doesn't
+ * impact memory. Only entries metadata is collected when files are added, so archive {@link #length()} can be computed
+ * before it is written, to be sent with a <code>Content-Length</code>.
+ * <p>
+ * Archive is written with 512 bytes blocks, so it isn't padded to the usual 10KB, and numbers too large for a tar
+ * header are encoded as binary (star/GNU), so header size doesn't depend on file size.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class TarArchive {
+
+    private static final int RECORD_SIZE = TarConstants.DEFAULT_RCDSIZE;
+
+    private final List<TarArchiveEntry> entries = new ArrayList<>();
+    /** file to read content from, for each entry */
+    private final List<Path> sources = new ArrayList<>();
+
+    /**
+     * Add a file or a directory, with all its content, at archive root.
+     */
+    public TarArchive add(Path path) throws IOException {
+        return add(path, path.getFileName().toString());
+    }
+
+    /**
+     * Add a file or a directory, with all its content, as <code>name</code>. Symbolic links are archived as such.
+     */
+    public TarArchive add(Path path, String name) throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                add(dir, entryName(dir), attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                add(file, entryName(file), attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            private String entryName(Path p) {
+                final Path relative = path.relativize(p);
+                if (relative.toString().isEmpty()) return name;
+                final StringBuilder s = new StringBuilder(name);
+                for (Path segment : relative) {
+                    s.append('/').append(segment);
+                }
+                return s.toString();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Add a single entry as <code>name</code>. For a directory, only directory itself is added, not its content.
+     */
+    public TarArchive addEntry(Path path, String name) throws IOException {
+        add(path, name, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        return this;
+    }
+
+    private void add(Path path, String name, BasicFileAttributes attrs) throws IOException {
+        final TarArchiveEntry entry;
+        if (attrs.isDirectory()) {
+            entry = new TarArchiveEntry(name + "/");
+            entry.setMode(TarArchiveEntry.DEFAULT_DIR_MODE & ~0777 | permissions(path, 0755));
+        } else if (attrs.isSymbolicLink()) {
+            entry = new TarArchiveEntry(name, TarConstants.LF_SYMLINK);
+            entry.setLinkName(Files.readSymbolicLink(path).toString());
+        } else if (attrs.isRegularFile()) {
+            entry = new TarArchiveEntry(name);
+            entry.setMode(TarArchiveEntry.DEFAULT_FILE_MODE & ~0777 | permissions(path, 0644));
+            entry.setSize(attrs.size());
+        } else {
+            // sockets, devices, etc
+            return;
+        }
+        add(entry, path, attrs);
+    }
+
+    private void add(TarArchiveEntry entry, Path source, BasicFileAttributes attrs) {
+        entry.setModTime(new Date(attrs.lastModifiedTime().toMillis()));
+        entries.add(entry);
+        sources.add(source);
+    }
+
+    private static int permissions(Path path, int defaultPermissions) throws IOException {
+        try {
+            return PosixModes.toMode(Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS));
+        } catch (UnsupportedOperationException e) {
+            return defaultPermissions;
+        }
+    }
+
+    /**
+     * @return number of entries in archive
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return exact size of the archive written by {@link #writeTo(OutputStream)}, as long as files don't change
+     */
+    public long length() throws IOException {
+        // only write headers to compute their size, including extensions for long names
+        final TarArchiveOutputStream tar = tarStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        long content = 0;
+        for (TarArchiveEntry entry : entries) {
+            final long size = entry.getSize();
+            entry.setSize(0);
+            tar.putArchiveEntry(entry);
+            tar.closeArchiveEntry();
+            entry.setSize(size);
+            content += (size + RECORD_SIZE - 1) / RECORD_SIZE * RECORD_SIZE;
+        }
+        tar.finish();
+        return tar.getBytesWritten() + content;
+    }
+
+    /**
+     * Write archive to <code>out</code>, which should be buffered. Stream is not closed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final TarArchiveOutputStream tar = tarStream(out);
+        final byte[] buffer = new byte[BufferPool.DEFAULT_BUFFER_SIZE];
+        for (int i = 0; i < entries.size(); i++) {
+            final TarArchiveEntry entry = entries.get(i);
+            tar.putArchiveEntry(entry);
+            if (entry.isFile() && entry.getSize() > 0) {
+                copy(sources.get(i), entry.getSize(), tar, buffer);
+            }
+            tar.closeArchiveEntry();
+        }
+        tar.finish();
+        out.flush();
+    }
+
+    /**
+     * Copy <code>size</code> bytes from file, as announced in entry header.
+     */
+    private static void copy(Path file, long size, OutputStream out, byte[] buffer) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            while (size > 0) {
+                final int read = in.read(buffer, 0, (int) Math.min(buffer.length, size));
+                if (read < 0) throw new EOFException(file + " has been truncated while archived");
+                out.write(buffer, 0, read);
+                size -= read;
+            }
+        }
+    }
+
+    /**
+     * @return archive as a stream, produced from disk as it is read, see {@link TarInputStreamBuilder}
+     */
+    public InputStream openStream() throws IOException {
+        final TarInputStreamBuilder builder = new TarInputStreamBuilder();
+        for (int i = 0; i < entries.size(); i++) {
+            final TarArchiveEntry entry = entries.get(i);
+            final Path source = sources.get(i);
+            builder.add(entry, entry.isFile() && entry.getSize() > 0 ? () -> Files.newInputStream(source) : null);
+        }
+        return builder.build();
+    }
+
+    static TarArchiveOutputStream tarStream(OutputStream out) {
+        final TarArchiveOutputStream tar = new TarArchiveOutputStream(out, RECORD_SIZE, "UTF-8");
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_STAR);
+        return tar;
+    }
+}
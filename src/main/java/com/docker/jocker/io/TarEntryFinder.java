@@ -0,0 +1,93 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Find some entries in a tar stream, like a few files from {@link com.docker.jocker.DockerClient#containerArchive}.
+ * Only headers are parsed: content of other entries is skipped, which for an HTTP response body means discarded
+ * straight from socket, and stream isn't read any further once all entries have been found.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class TarEntryFinder {
+
+    /**
+     * Receive an entry found in archive, with its content.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        void accept(TarArchiveEntry entry, InputStream content) throws IOException;
+    }
+
+    private final Set<String> names = new LinkedHashSet<>();
+
+    /**
+     * @param names entries to find, as tar entry names, a leading <code>/</code> or <code>./</code> is ignored
+     */
+    public TarEntryFinder(Collection<String> names) {
+        for (String name : names) {
+            this.names.add(normalize(name));
+        }
+    }
+
+    /**
+     * Scan <code>tar</code> till all entries have been found, or end of archive. Stream isn't closed.
+     * @return names of entries which haven't been found
+     */
+    public Set<String> find(InputStream tar, Handler handler) throws IOException {
+        final Set<String> missing = new LinkedHashSet<>(names);
+        final TarArchiveInputStream in = new TarArchiveInputStream(tar);
+        TarArchiveEntry entry;
+        while (!missing.isEmpty() && (entry = in.getNextTarEntry()) != null) {
+            if (missing.remove(normalize(entry.getName()))) {
+                handler.accept(entry, in);
+            }
+            // getNextTarEntry skips what handler didn't read
+        }
+        return missing;
+    }
+
+    /**
+     * Copy entry content to a file channel, from its current position.
+     * @return number of bytes written
+     */
+    public static long transferTo(InputStream content, FileChannel target) throws IOException {
+        final ReadableByteChannel source = content instanceof ReadableByteChannel
+                ? (ReadableByteChannel) content : Channels.newChannel(content);
+        final ByteBuffer buffer = BufferPool.DEFAULT.acquire();
+        try {
+            long written = 0;
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    written += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return written;
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+        }
+    }
+
+    /**
+     * @return entry name without leading <code>/</code> or <code>./</code>, nor trailing <code>/</code>
+     */
+    public static String normalize(String name) {
+        while (name.startsWith("/") || name.startsWith("./")) {
+            name = name.substring(name.charAt(0) == '/' ? 1 : 2);
+        }
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+}
@@ -0,0 +1,327 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extract a tar stream to a local directory, typically {@link com.docker.jocker.DockerClient#containerArchive}, with
+ * files written in parallel.
+ * <p>
+ * Archive is read once, by caller thread, which copies file content into direct buffers from a {@link BufferPool} and
+ * hands them to a pool of writer threads, one file per thread at a time, so writes to disk don't throttle reading from
+ * socket. Buffers not written yet are bounded, so memory used doesn't depend on files size. File modes and modification
+ * times are preserved, directories' ones once all their files have been written.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class TarExtractor {
+
+    public static final int DEFAULT_THREADS = 4;
+
+    /** marks end of a file content */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final Path target;
+    private final int threads;
+    private final BufferPool buffers;
+    private final int maxBuffers;
+
+    public TarExtractor(Path target) {
+        this(target, DEFAULT_THREADS, BufferPool.DEFAULT);
+    }
+
+    /**
+     * @param threads number of writer threads
+     */
+    public TarExtractor(Path target, int threads, BufferPool buffers) {
+        this.target = target.toAbsolutePath().normalize();
+        this.threads = threads;
+        this.buffers = buffers;
+        this.maxBuffers = threads * 4;
+    }
+
+    /**
+     * Extract archive, which is read till its end but not closed.
+     */
+    public Result extract(InputStream tar) throws IOException {
+        final long start = System.nanoTime();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService writers = Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "tar-writer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        final Semaphore inFlight = new Semaphore(maxBuffers);
+        final Map<Path, Future<?>> files = new HashMap<>();
+        final List<TarArchiveEntry> directories = new ArrayList<>();
+        final List<Path> directoryPaths = new ArrayList<>();
+        final byte[] chunk = new byte[buffers.getBufferSize()];
+        // symbolic links extracted, archive can't write through them
+        final Set<Path> links = new HashSet<>();
+        long bytes = 0;
+        int count = 0;
+        try {
+            final TarArchiveInputStream in = new TarArchiveInputStream(tar);
+            TarArchiveEntry entry;
+            while ((entry = in.getNextTarEntry()) != null) {
+                final Path path = resolve(entry.getName(), links);
+                if (entry.isDirectory() || entry.isSymbolicLink() || entry.isLink() || entry.isFile()) {
+                    // a later entry for same path replaces earlier one, once it has been written
+                    await(files.remove(path));
+                    if (links.remove(path)) {
+                        Files.delete(path);
+                    }
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(path);
+                    directories.add(entry);
+                    directoryPaths.add(path);
+                } else if (entry.isSymbolicLink()) {
+                    Files.createDirectories(path.getParent());
+                    Files.deleteIfExists(path);
+                    Files.createSymbolicLink(path, Paths.get(entry.getLinkName()));
+                    links.add(path);
+                    count++;
+                } else if (entry.isLink()) {
+                    final Path existing = resolve(entry.getLinkName(), links);
+                    await(files.get(existing));
+                    Files.createDirectories(path.getParent());
+                    Files.deleteIfExists(path);
+                    Files.createLink(path, existing);
+                    if (links.contains(existing)) {
+                        // link to a symbolic link is one too
+                        links.add(path);
+                    }
+                    count++;
+                } else if (entry.isFile()) {
+                    Files.createDirectories(path.getParent());
+                    final FileWrite write = new FileWrite(path, entry, inFlight);
+                    files.put(path, writers.submit(write));
+                    count++;
+                    try {
+                        int n;
+                        while ((n = read(in, chunk)) > 0) {
+                            acquire(inFlight);
+                            final ByteBuffer buffer = buffers.acquire();
+                            buffer.put(chunk, 0, n).flip();
+                            write.chunks.add(buffer);
+                            bytes += n;
+                        }
+                    } finally {
+                        write.chunks.add(END);
+                    }
+                }
+                // other entries (devices, fifos) can't be extracted by a regular user
+            }
+            // padding after end of archive, so an HTTP connection can be reused
+            IOUtils.skip(tar, Long.MAX_VALUE);
+
+            for (Future<?> file : files.values()) {
+                await(file);
+            }
+            // once files have been created, in reverse order so parents come last
+            for (int i = directories.size() - 1; i >= 0; i--) {
+                final Path path = directoryPaths.get(i);
+                if (links.contains(path)) continue; // replaced by a later entry
+                setAttributes(path, directories.get(i));
+            }
+        } finally {
+            writers.shutdownNow();
+        }
+        return new Result(count, directories.size(), bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Fill chunk from current entry, so buffers are written full.
+     */
+    private static int read(InputStream in, byte[] chunk) throws IOException {
+        int n = 0;
+        while (n < chunk.length) {
+            final int read = in.read(chunk, n, chunk.length - n);
+            if (read < 0) break;
+            n += read;
+        }
+        return n;
+    }
+
+    private static void acquire(Semaphore semaphore) throws InterruptedIOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        if (future == null) return;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * @return path of entry in target directory, which entry can't escape, neither by name nor through a symbolic link
+     */
+    private Path resolve(String name, Set<Path> links) throws IOException {
+        final Path path = target.resolve(TarEntryFinder.normalize(name)).normalize();
+        boolean outside = !path.startsWith(target);
+        for (Path parent = path.getParent(); !outside && parent != null && parent.startsWith(target); parent = parent.getParent()) {
+            outside = links.contains(parent);
+        }
+        if (outside) {
+            throw new IOException("Archive entry " + name + " is outside of target directory");
+        }
+        return path;
+    }
+
+    /**
+     * Set mode and modification time, without following links, so a file can't be changed outside of target directory
+     * if path has been replaced by a symbolic link.
+     */
+    private static void setAttributes(Path path, TarArchiveEntry entry) throws IOException {
+        final PosixFileAttributeView posix = Files.getFileAttributeView(path, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (posix != null) {
+            posix.setPermissions(PosixModes.toPermissions(entry.getMode()));
+        }
+        final FileTime mtime = FileTime.fromMillis(entry.getModTime().getTime());
+        Files.getFileAttributeView(path, BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS).setTimes(mtime, null, null);
+    }
+
+    /**
+     * Write a file content as buffers are received.
+     */
+    private class FileWrite implements Callable<Void> {
+
+        final Path path;
+        final TarArchiveEntry entry;
+        final Semaphore inFlight;
+        final BlockingQueue<ByteBuffer> chunks = new LinkedBlockingQueue<>();
+
+        FileWrite(Path path, TarArchiveEntry entry, Semaphore inFlight) {
+            this.path = path;
+            this.entry = entry;
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            IOException failure = null;
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                failure = e;
+            }
+            try {
+                ByteBuffer buffer;
+                while ((buffer = chunks.take()) != END) {
+                    try {
+                        if (failure == null) {
+                            while (buffer.hasRemaining()) channel.write(buffer);
+                        }
+                    } catch (IOException e) {
+                        // keep on consuming buffers, so reader isn't blocked
+                        failure = e;
+                    } finally {
+                        buffers.release(buffer);
+                        inFlight.release();
+                    }
+                }
+            } finally {
+                if (channel != null) channel.close();
+            }
+            if (failure != null) throw failure;
+            setAttributes(path, entry);
+            return null;
+        }
+    }
+
+    public static class Result {
+
+        private final int files;
+        private final int directories;
+        private final long bytes;
+        private final long nanos;
+
+        Result(int files, int directories, long bytes, long nanos) {
+            this.files = files;
+            this.directories = directories;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return number of files and links extracted
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        public int getDirectories() {
+            return directories;
+        }
+
+        /**
+         * @return size of files extracted
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getDuration(TimeUnit unit) {
+            return unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return bytes extracted per second
+         */
+        public double getThroughput() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files, %d directories, %d bytes in %d ms (%.1f MB/s)",
+                    files, directories, bytes, getDuration(TimeUnit.MILLISECONDS), getThroughput() / (1024 * 1024));
+        }
+    }
+}
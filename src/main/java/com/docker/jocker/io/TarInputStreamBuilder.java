@@ -2,62 +2,294 @@ package com.docker.jocker.io;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.utils.IOUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 /**
+ * Build a tar archive as an {@link InputStream}, typically a build context for
+ * {@link com.docker.jocker.DockerClient#imageBuild}.
+ * <p>
+ * Files and {@link Content}s are only recorded when added, and archive is produced as stream is read: they are opened
+ * when their entry is reached, and content is read by chunks as the consumer pulls bytes, so memory used doesn't
+ * depend on archive size. {@link InputStream}s remain owned by caller, which can close them once added: they are read
+ * when added, and buffered in memory up to <code>memoryBudget</code>, then spilled to a temporary file deleted once
+ * archive has been streamed.
+ *
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
  */
 public class TarInputStreamBuilder {
 
+    public static final int DEFAULT_MEMORY_BUDGET = 1024 * 1024;
 
-    private final ByteArrayOutputStream bos;
-    private final TarArchiveOutputStream tar;
+    static final int CHUNK_SIZE = 32 * 1024;
+
+    private static final long UNKNOWN_LENGTH = Long.MAX_VALUE;
+
+    /**
+     * Entry content, opened when entry is written to archive.
+     */
+    @FunctionalInterface
+    public interface Content {
+        InputStream open() throws IOException;
+    }
+
+    private final int memoryBudget;
+    private final List<Entry> entries = new ArrayList<>();
 
     public TarInputStreamBuilder() {
-        bos = new ByteArrayOutputStream();
-        tar = new TarArchiveOutputStream(bos);
+        this(DEFAULT_MEMORY_BUDGET);
     }
 
+    /**
+     * @param memoryBudget maximum size of a stream of unknown length buffered in memory
+     */
+    public TarInputStreamBuilder(int memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Add an entry with <code>length</code> bytes, read from <code>content</code> before this method returns.
+     * <code>content</code> is not closed.
+     */
     public TarInputStreamBuilder add(String name, int mode, InputStream content, int length) throws IOException {
-        TarArchiveEntry entry = new TarArchiveEntry(name);
-        entry.setSize(length);
-        entry.setMode(mode);
-        tar.putArchiveEntry(entry);
-        int read;
-        byte[] buffer = new byte[4096];
-        while ((read = content.read(buffer,0,4096)) >= 0) {
-            tar.write(buffer, 0, read);
-            length -= read;
-        }
-        if (length != 0) throw new IOException("Unexpected context size, expected "+length+"bytes, got "+length);
-        tar.closeArchiveEntry();
-        return this;
+        return buffer(entry(name, mode, length), content, length);
     }
 
+    /**
+     * Add an entry with all bytes from <code>content</code>, read before this method returns. <code>content</code> is
+     * not closed.
+     */
     public TarInputStreamBuilder add(String name, int mode, InputStream content) throws IOException {
-        add(name, mode, IOUtils.toByteArray(content));
-        return this;
+        return buffer(entry(name, mode, 0), content, UNKNOWN_LENGTH);
     }
 
     public TarInputStreamBuilder add(String name, int mode, byte[] bytes) throws IOException {
-        TarArchiveEntry entry = new TarArchiveEntry(name);
-        entry.setSize(bytes.length);
-        entry.setMode(mode);
-        tar.putArchiveEntry(entry);
-        tar.write(bytes);
-        tar.closeArchiveEntry();
+        return add(name, mode, bytes.length, () -> new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Add a file, which is only read when archive is streamed.
+     */
+    public TarInputStreamBuilder add(String name, int mode, Path file) throws IOException {
+        return add(name, mode, Files.size(file), () -> Files.newInputStream(file));
+    }
+
+    /**
+     * Add an entry with <code>length</code> bytes, read from a stream opened when archive is streamed.
+     */
+    public TarInputStreamBuilder add(String name, int mode, long length, Content content) throws IOException {
+        return add(entry(name, mode, length), content);
+    }
+
+    /**
+     * Add an entry with a custom header, which size is read from <code>content</code> when archive is streamed.
+     * @param content <code>null</code> for entries without content, like directories or links
+     */
+    public TarInputStreamBuilder add(TarArchiveEntry entry, Content content) {
+        entries.add(new Entry(entry, content));
         return this;
     }
 
+    /**
+     * Read <code>length</code> bytes, or all of them if unknown, in memory up to budget, then to a temporary file.
+     */
+    private TarInputStreamBuilder buffer(TarArchiveEntry entry, InputStream in, long length) throws IOException {
+        final byte[] chunk = new byte[CHUNK_SIZE];
+        final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        final long limit = Math.min(length, memoryBudget + 1L);
+        final long n = copy(in, memory, limit, chunk);
+        if (n < limit || n == length) {
+            checkLength(entry, n, length);
+            final byte[] bytes = memory.toByteArray();
+            entry.setSize(bytes.length);
+            return add(entry, () -> new ByteArrayInputStream(bytes));
+        }
+
+        final Path spill = Files.createTempFile("jocker", ".tar-entry");
+        try (OutputStream out = Files.newOutputStream(spill)) {
+            memory.writeTo(out);
+            final long size = n + copy(in, out, length - n, chunk);
+            checkLength(entry, size, length);
+            entry.setSize(size);
+        } catch (IOException e) {
+            Files.deleteIfExists(spill);
+            throw e;
+        }
+        return add(entry, () -> Files.newInputStream(spill, StandardOpenOption.DELETE_ON_CLOSE));
+    }
+
+    /**
+     * @return number of bytes copied, less than <code>max</code> if end of stream has been reached
+     */
+    private static long copy(InputStream in, OutputStream out, long max, byte[] chunk) throws IOException {
+        long copied = 0;
+        int n;
+        while (copied < max && (n = in.read(chunk, 0, (int) Math.min(chunk.length, max - copied))) >= 0) {
+            out.write(chunk, 0, n);
+            copied += n;
+        }
+        return copied;
+    }
+
+    private static void checkLength(TarArchiveEntry entry, long read, long length) throws EOFException {
+        if (length != UNKNOWN_LENGTH && read < length) {
+            throw new EOFException(entry.getName() + " is shorter than announced " + length + " bytes");
+        }
+    }
+
+    private static TarArchiveEntry entry(String name, int mode, long length) {
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(length);
+        entry.setMode(mode);
+        return entry;
+    }
+
+    /**
+     * @return archive stream. Streams spilled to a temporary file can only be read once, so archive can only be built
+     * once if one has been added.
+     */
     public InputStream build() throws IOException {
-        tar.close();
-        return new ByteArrayInputStream(bos.toByteArray());
+        return new TarStream(entries.iterator());
+    }
+
+    private static class Entry {
+        final TarArchiveEntry header;
+        final Content content;
+
+        Entry(TarArchiveEntry header, Content content) {
+            this.header = header;
+            this.content = content;
+        }
     }
 
+    /**
+     * Produce archive on demand: each time consumer needs more bytes, next entry header or content chunk is written
+     * to a pending buffer, reused for the whole archive.
+     */
+    private class TarStream extends InputStream {
+
+        private final Iterator<Entry> next;
+        private final Pending pending = new Pending();
+        private final TarArchiveOutputStream tar = TarArchive.tarStream(pending);
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private final byte[] single = new byte[1];
+        private TarArchiveEntry current;
+        private InputStream content;
+        private long remaining;
+        private boolean finished;
+
+        TarStream(Iterator<Entry> entries) {
+            this.next = entries;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (pending.available() == 0) {
+                if (!fill()) return -1;
+            }
+            return pending.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return pending.available();
+        }
+
+        /**
+         * Write next part of the archive to pending buffer. Content is buffered by tar stream up to a full record,
+         * so pending buffer can still be empty.
+         * @return <code>false</code> at end of archive
+         */
+        private boolean fill() throws IOException {
+            pending.reset();
+            if (content != null) {
+                if (remaining > 0) {
+                    final int n = content.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                    if (n < 0) {
+                        throw new EOFException(current.getName() + " is shorter than announced " + current.getSize() + " bytes");
+                    }
+                    tar.write(chunk, 0, n);
+                    remaining -= n;
+                } else {
+                    closeContent();
+                    tar.closeArchiveEntry();
+                }
+                return true;
+            }
+            if (next.hasNext()) {
+                final Entry entry = next.next();
+                current = entry.header;
+                content = entry.content != null ? entry.content.open() : null;
+                tar.putArchiveEntry(current);
+                remaining = current.getSize();
+                if (content == null) {
+                    tar.closeArchiveEntry();
+                }
+                return true;
+            }
+            if (!finished) {
+                tar.finish();
+                finished = true;
+                return true;
+            }
+            return false;
+        }
 
+        private void closeContent() throws IOException {
+            final InputStream in = content;
+            content = null;
+            if (in != null) in.close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeContent();
+        }
+    }
+
+    /**
+     * Bytes written by tar stream, not read yet by consumer.
+     */
+    private static class Pending extends ByteArrayOutputStream {
+
+        private int pos;
+
+        Pending() {
+            super(CHUNK_SIZE + 1024);
+        }
+
+        int available() {
+            return count - pos;
+        }
+
+        int read(byte[] b, int off, int len) {
+            final int n = Math.min(len, count - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            pos = 0;
+        }
+    }
 }
@@ -25,7 +25,7 @@ public class BuildImageRequest {
     private String networkmode;
     private Map<String, String> buildargs;
     private boolean squash;
-    private Collection<String> labels;
+    private Map<String, String> labels;
 
     public String getDockerfile() {
         return dockerfile;
@@ -111,7 +111,7 @@ public class BuildImageRequest {
         return squash;
     }
 
-    public Collection<String> getLabels() {
+    public Map<String, String> getLabels() {
         return labels;
     }
 
@@ -221,7 +221,7 @@ public class BuildImageRequest {
         return this;
     }
 
-    public BuildImageRequest labels(Collection<String> labels) {
+    public BuildImageRequest labels(Map<String, String> labels) {
         this.labels = labels;
         return this;
     }
@@ -1,9 +1,16 @@
 package com.docker.jocker.model;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
 /**
+ * Filters applied by daemon on <code>/events</code> stream, which can also be tested client-side on received events
+ * with same semantics: distinct filters all have to match, and any value set for a filter does, but labels which all
+ * have to match. <code>daemon</code> and <code>scope</code> filters can't be tested client-side and are ignored.
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
  */
-public class EventsFilters extends Filters {
+public class EventsFilters extends Filters implements Predicate<SystemEventsResponse> {
 
     public void setConfig(String config) {
         add("config", config);
@@ -112,6 +119,15 @@ public class EventsFilters extends Filters {
         return this;
     }
 
+    public void setType(String type) {
+        add("type", type);
+    }
+
+    public EventsFilters type(String type) {
+        setType(type);
+        return this;
+    }
+
     public void setVolume(String volume) {
         add("volume", volume);
         add("type", "volume");
@@ -121,4 +137,72 @@ public class EventsFilters extends Filters {
         setVolume(volume);
         return this;
     }
+
+    @Override
+    public boolean test(SystemEventsResponse event) {
+        final SystemEventsResponseActor actor = event.getActor();
+        final String id = actor != null ? actor.getID() : null;
+        final Map<String, String> attributes = actor != null ? actor.getAttributes() : null;
+        final String name = attributes != null ? attributes.get("name") : null;
+
+        return matchAction(event.getAction())
+            && match("type", event.getType())
+            && matchObject("config", id, name)
+            && matchObject("container", id, name)
+            && matchObject("network", id, name)
+            && matchObject("node", id, name)
+            && matchObject("secret", id, name)
+            && matchObject("service", id, name)
+            && matchObject("volume", id, name)
+            && matchObject("image", id, name, attributes != null ? attributes.get("image") : null)
+            && matchLabels(attributes);
+    }
+
+    private boolean match(String key, String value) {
+        final Set<String> values = get(key);
+        return values == null || values.contains(value);
+    }
+
+    /**
+     * Some actions have a detail suffix, like <code>health_status: healthy</code>, filter can match prefix.
+     */
+    private boolean matchAction(String action) {
+        final Set<String> values = get("event");
+        if (values == null) return true;
+        if (action == null) return false;
+        final int colon = action.indexOf(':');
+        return values.contains(action) || (colon > 0 && values.contains(action.substring(0, colon)));
+    }
+
+    /**
+     * Objects are matched by name or by (prefix of) ID.
+     */
+    private boolean matchObject(String key, String id, String... names) {
+        final Set<String> values = get(key);
+        if (values == null) return true;
+        for (String value : values) {
+            if (id != null && id.startsWith(value)) return true;
+            for (String name : names) {
+                if (value.equals(name)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * labels are filtered as <code>key</code> or <code>key=value</code>, all of them have to match.
+     */
+    private boolean matchLabels(Map<String, String> attributes) {
+        final Set<String> values = get("label");
+        if (values == null) return true;
+        if (attributes == null) return false;
+        for (String label : values) {
+            final int eq = label.indexOf('=');
+            final boolean match = eq < 0
+                ? attributes.containsKey(label)
+                : label.substring(eq + 1).equals(attributes.get(label.substring(0, eq)));
+            if (!match) return false;
+        }
+        return true;
+    }
 }
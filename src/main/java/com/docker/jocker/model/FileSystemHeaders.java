@@ -19,4 +19,15 @@ public class FileSystemHeaders extends HashMap<String, String> {
         return get("mode");
     }
 
+    /**
+     * @return modification time, as RFC3339 timestamp
+     */
+    public String getMtime() {
+        return get("mtime");
+    }
+
+    public String getLinkTarget() {
+        return get("linkTarget");
+    }
+
 }
@@ -7,6 +7,7 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
@@ -25,6 +26,14 @@ public abstract class Filters {
         entry.put(value, true);
     }
 
+    /**
+     * @return values set for filter <code>key</code>, or <code>null</code> if this filter isn't set.
+     */
+    protected Set<String> get(String key) {
+        final Map<String, Boolean> entry = args.get(key);
+        return entry != null ? entry.keySet() : null;
+    }
+
     public String encode(Gson gson) {
         try {
             return URLEncoder.encode(gson.toJson(args), StandardCharsets.ISO_8859_1.name());
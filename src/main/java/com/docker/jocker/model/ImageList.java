@@ -0,0 +1,6 @@
+package com.docker.jocker.model;
+
+import java.util.ArrayList;
+
+public class ImageList extends ArrayList<ImageSummary> {
+}
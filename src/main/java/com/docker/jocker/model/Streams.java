@@ -1,5 +1,8 @@
 package com.docker.jocker.model;
 
+import com.docker.jocker.io.DockerMultiplexedFrameReader;
+import com.docker.jocker.io.StreamDemultiplexer;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -14,4 +17,18 @@ public interface Streams extends AutoCloseable {
     void redirectStderr(OutputStream stderr) throws IOException;
 
     OutputStream stdin() throws IOException;
+
+    /**
+     * Frame-level access to stdout and stderr, as an alternative to {@link #stdout()}.
+     */
+    default DockerMultiplexedFrameReader frames() throws IOException {
+        throw new IOException("stream is not multiplexed");
+    }
+
+    /**
+     * Split stdout and stderr into independent streams, as an alternative to {@link #stdout()}.
+     */
+    default StreamDemultiplexer demultiplex(int capacity, StreamDemultiplexer.Backpressure backpressure) throws IOException {
+        return new StreamDemultiplexer(frames(), capacity, backpressure);
+    }
 }
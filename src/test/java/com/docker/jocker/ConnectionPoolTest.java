@@ -0,0 +1,56 @@
+package com.docker.jocker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ConnectionPoolTest {
+
+    @Test
+    public void reuseReleasedConnection() throws IOException {
+        ConnectionPool pool = new ConnectionPool(2, 60_000);
+        assertNull(pool.get());
+
+        ConnectionPool.Connection a = new ConnectionPool.Connection(new Socket());
+        ConnectionPool.Connection b = new ConnectionPool.Connection(new Socket());
+        ConnectionPool.Connection c = new ConnectionPool.Connection(new Socket());
+        pool.release(a);
+        pool.release(b);
+        pool.release(c); // pool is full
+        assertTrue(c.isClosed());
+        assertEquals(2, pool.idleCount());
+
+        assertSame(b, pool.get());
+        assertSame(a, pool.get());
+        assertNull(pool.get());
+    }
+
+    @Test
+    public void evictIdleConnections() throws Exception {
+        ConnectionPool pool = new ConnectionPool(2, 10);
+        ConnectionPool.Connection a = new ConnectionPool.Connection(new Socket());
+        pool.release(a);
+        Thread.sleep(20);
+        assertNull(pool.get());
+        assertTrue(a.isClosed());
+    }
+
+    @Test
+    public void closePool() throws IOException {
+        ConnectionPool pool = new ConnectionPool(2, 60_000);
+        ConnectionPool.Connection a = new ConnectionPool.Connection(new Socket());
+        pool.release(a);
+        pool.close();
+        assertTrue(a.isClosed());
+
+        ConnectionPool.Connection b = new ConnectionPool.Connection(new Socket());
+        pool.release(b);
+        assertTrue(b.isClosed());
+    }
+}
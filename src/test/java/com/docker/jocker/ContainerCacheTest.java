@@ -0,0 +1,151 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.ContainerSummaryInner;
+import com.docker.jocker.model.SystemEventsResponse;
+import com.docker.jocker.model.SystemEventsResponseActor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ContainerCacheTest {
+
+    private static ContainerSummaryInner container(String id, String name, String team) {
+        return new ContainerSummaryInner()
+                .id(id)
+                .names(Arrays.asList("/" + name))
+                .state("created")
+                .putLabelsItem("com.example.team", team);
+    }
+
+    private static SystemEventsResponse event(String id, String action) {
+        return new SystemEventsResponse()
+                .type("container")
+                .action(action)
+                .actor(new SystemEventsResponseActor().ID(id));
+    }
+
+    @Test
+    public void indexes() {
+        final ContainerCache cache = new ContainerCache(null);
+        cache.put(container("a1", "web", "front"));
+        cache.put(container("b2", "db", "back"));
+        cache.put(container("c3", "cache", "back"));
+
+        Assert.assertEquals(3, cache.list().size());
+        Assert.assertEquals("b2", cache.getByName("db").getId());
+        Assert.assertEquals("b2", cache.getByName("/db").getId());
+        Assert.assertEquals(2, cache.getByLabel("com.example.team", "back").size());
+        Assert.assertEquals(3, cache.getByLabel("com.example.team", null).size());
+        Assert.assertTrue(cache.getByLabel("com.example.env", null).isEmpty());
+    }
+
+    @Test
+    public void applyEvents() throws IOException {
+        final ContainerCache cache = new ContainerCache(null);
+        cache.put(container("a1", "web", "front"));
+
+        final ContainerSummaryInner created = cache.get("a1");
+        cache.apply(event("a1", "start"));
+        Assert.assertEquals("running", cache.get("a1").getState());
+        // instances handed out are copies, not updated by events
+        Assert.assertEquals("created", created.getState());
+        created.setState("dead");
+        Assert.assertEquals("running", cache.getByName("web").getState());
+        cache.apply(event("a1", "exec_start: sh"));
+        Assert.assertEquals("running", cache.get("a1").getState());
+        cache.apply(event("a1", "die"));
+        Assert.assertEquals("exited", cache.get("a1").getState());
+
+        cache.apply(event("a1", "destroy"));
+        Assert.assertNull(cache.get("a1"));
+        Assert.assertNull(cache.getByName("web"));
+        Assert.assertTrue(cache.getByLabel("com.example.team", null).isEmpty());
+
+        // unknown container
+        cache.apply(event("zz", "die"));
+        Assert.assertTrue(cache.list().isEmpty());
+    }
+
+    private static final String CONTAINERS = "[{\"Id\":\"a1\",\"Names\":[\"/web\"],\"State\":\"created\"}]";
+
+    private static String event(String action, long timeNano) {
+        return "{\"Type\":\"container\",\"Action\":\"" + action + "\",\"Actor\":{\"ID\":\"a1\"}," +
+                "\"time\":" + timeNano / 1_000_000_000 + ",\"timeNano\":" + timeNano + "}";
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void seedAndResume() throws Exception {
+        final AtomicInteger events = new AtomicInteger();
+        final AtomicInteger lists = new AtomicInteger();
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> {
+            if (request.startsWith("GET /v1.40/containers/json")) {
+                lists.incrementAndGet();
+                return FakeDaemon.json(200, CONTAINERS);
+            }
+            switch (events.incrementAndGet()) {
+                case 1:
+                    // connection lost after first event
+                    return FakeDaemon.chunked(false, event("start", 1461943101381709551L));
+                default:
+                    Assert.assertTrue(request, request.contains("since=1461943101.381709551"));
+                    // replayed event, then stream kept open
+                    final String replayed = event("start", 1461943101381709551L);
+                    final String die = event("die", 1461943102000000000L);
+                    return "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                            Integer.toHexString(replayed.length()) + "\r\n" + replayed + "\r\n" +
+                            Integer.toHexString(die.length()) + "\r\n" + die + "\r\n";
+            }
+        });
+             DockerClient client = new DockerClient(daemon.getHost());
+             ContainerCache cache = new ContainerCache(client)) {
+            cache.start();
+            Assert.assertEquals("a1", cache.getByName("web").getId());
+            await(() -> "exited".equals(cache.get("a1").getState()));
+            Assert.assertEquals(2, events.get());
+            // resumed without seeding again
+            Assert.assertEquals(1, lists.get());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failOnErrorStatus() throws Exception {
+        final AtomicInteger events = new AtomicInteger();
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> {
+            if (request.startsWith("GET /v1.40/containers/json")) {
+                return FakeDaemon.json(200, CONTAINERS);
+            }
+            return events.incrementAndGet() == 1
+                    ? FakeDaemon.chunked(false, event("start", 1461943101381709551L))
+                    : FakeDaemon.json(500, "{\"message\":\"daemon is broken\"}");
+        });
+             DockerClient client = new DockerClient(daemon.getHost());
+             ContainerCache cache = new ContainerCache(client)) {
+            cache.start();
+            await(() -> {
+                try {
+                    cache.list();
+                    return false;
+                } catch (IllegalStateException e) {
+                    Assert.assertEquals(500, ((HttpStatusException) e.getCause()).getStatus());
+                    return true;
+                }
+            });
+            // not retried
+            Thread.sleep(EventStream.RECONNECT_DELAY + 200);
+            Assert.assertEquals(2, events.get());
+        }
+    }
+}
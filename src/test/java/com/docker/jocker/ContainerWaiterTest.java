@@ -0,0 +1,100 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.ContainerInspectResponse;
+import com.docker.jocker.model.ContainerState;
+import com.docker.jocker.model.ContainerWaitResponse;
+import com.docker.jocker.model.SystemEventsResponse;
+import com.docker.jocker.model.SystemEventsResponseActor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ContainerWaiterTest {
+
+    private static ContainerInspectResponse inspect(String id, boolean running, int exitCode) {
+        return new ContainerInspectResponse()
+                .id(id)
+                .state(new ContainerState().running(running).exitCode(exitCode));
+    }
+
+    private static SystemEventsResponse die(String id, int exitCode) {
+        return new SystemEventsResponse()
+                .type("container")
+                .action("die")
+                .actor(new SystemEventsResponseActor().ID(id).putAttributesItem("exitCode", String.valueOf(exitCode)));
+    }
+
+    private static SystemEventsResponse die(String id, int exitCode, long timeNano) {
+        return die(id, exitCode).timeNano(timeNano);
+    }
+
+    @Test
+    public void alreadyExited() throws Exception {
+        final ContainerWaiter waiter = new ContainerWaiter(null);
+        final CompletableFuture<ContainerWaitResponse> future = waiter.waitFor(inspect("a1", false, 3));
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(Integer.valueOf(3), future.get().getStatusCode());
+    }
+
+    @Test
+    public void completeOnDie() throws Exception {
+        final ContainerWaiter waiter = new ContainerWaiter(null);
+        final CompletableFuture<ContainerWaitResponse> a1 = waiter.waitFor(inspect("a1", true, 0));
+        final CompletableFuture<ContainerWaitResponse> b2 = waiter.waitFor(inspect("b2", true, 0));
+
+        waiter.died(die("b2", 137));
+        Assert.assertFalse(a1.isDone());
+        Assert.assertEquals(Integer.valueOf(137), b2.get().getStatusCode());
+
+        waiter.died(die("a1", 0));
+        Assert.assertEquals(Integer.valueOf(0), a1.get().getStatusCode());
+    }
+
+    @Test
+    public void cancelOnlyCallerFuture() throws Exception {
+        final ContainerWaiter waiter = new ContainerWaiter(null);
+        final CompletableFuture<ContainerWaitResponse> first = waiter.waitFor(inspect("a1", true, 0));
+        final CompletableFuture<ContainerWaitResponse> second = waiter.waitFor(inspect("a1", true, 0));
+        first.cancel(true);
+        Assert.assertFalse(second.isDone());
+
+        waiter.died(die("a1", 4));
+        Assert.assertEquals(Integer.valueOf(4), second.get().getStatusCode());
+    }
+
+    @Test
+    public void diedBeforeRegistration() throws Exception {
+        final ContainerWaiter waiter = new ContainerWaiter(null);
+        // die event received while container was registered from a stale inspect
+        waiter.died(die("a1", 1));
+        final CompletableFuture<ContainerWaitResponse> future = waiter.waitFor(inspect("a1", true, 0));
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(Integer.valueOf(1), future.get().getStatusCode());
+    }
+
+    @Test
+    public void ignoreDieBeforeRestart() throws Exception {
+        final ContainerWaiter waiter = new ContainerWaiter(null);
+        // 2016-04-29T15:18:21.381709551Z
+        waiter.died(die("a1", 1, 1461943101381709551L));
+        final ContainerInspectResponse restarted = inspect("a1", true, 0);
+        restarted.getState().setStartedAt("2016-04-29T15:18:22.5Z");
+        final CompletableFuture<ContainerWaitResponse> future = waiter.waitFor(restarted);
+        Assert.assertFalse(future.isDone());
+
+        waiter.died(die("a1", 2, 1461943200000000000L));
+        Assert.assertEquals(Integer.valueOf(2), future.get().getStatusCode());
+    }
+
+    @Test
+    public void closeFailsPending() throws Exception {
+        final ContainerWaiter waiter = new ContainerWaiter(null);
+        final CompletableFuture<ContainerWaitResponse> future = waiter.waitFor(inspect("a1", true, 0));
+        waiter.close();
+        Assert.assertTrue(future.isCompletedExceptionally());
+    }
+}
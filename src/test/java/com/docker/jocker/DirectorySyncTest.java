@@ -0,0 +1,212 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.ExecConfig;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class DirectorySyncTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(UTF_8));
+    }
+
+    /** run a sync, without a container */
+    private static Map<String, DirectorySync.Entry> sync(DirectorySync sync, String... expectedChanges) throws IOException {
+        final Map<String, DirectorySync.Entry> local = sync.scan();
+        Assert.assertEquals(Arrays.asList(expectedChanges), sync.changed(local));
+        return local;
+    }
+
+    @Test
+    public void onlyChanges() throws IOException {
+        final Path root = tmp.newFolder("src").toPath();
+        write(root.resolve("pom.xml"), "<project/>");
+        write(root.resolve("src/Main.java"), "class Main {}");
+        final DirectorySync sync = new DirectorySync(null, "c", root, "/app/");
+
+        Map<String, DirectorySync.Entry> local = sync(sync, "pom.xml", "src", "src/Main.java");
+        Assert.assertEquals(Collections.emptyList(), sync.deleted(local));
+        sync.commit(local);
+        sync.commit(sync(sync));
+
+        // touched, but same content
+        Files.setLastModifiedTime(root.resolve("pom.xml"), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        sync.commit(sync(sync));
+
+        write(root.resolve("src/Main.java"), "class Main { }");
+        write(root.resolve("src/main/resources/app.properties"), "a=b");
+        sync.commit(sync(sync, "src/Main.java", "src/main", "src/main/resources", "src/main/resources/app.properties"));
+    }
+
+    @Test
+    public void deleted() throws IOException {
+        final Path root = tmp.newFolder("src").toPath();
+        write(root.resolve("a/b/c.txt"), "c");
+        write(root.resolve("a/d.txt"), "d");
+        write(root.resolve("a-b"), "a-b");
+        write(root.resolve("x"), "x");
+        final DirectorySync sync = new DirectorySync(null, "c", root, "/app");
+        sync.commit(sync.scan());
+
+        Files.delete(root.resolve("a/b/c.txt"));
+        Files.delete(root.resolve("a/b"));
+        Files.delete(root.resolve("a/d.txt"));
+        Files.delete(root.resolve("a"));
+        // file replaced by a directory
+        Files.delete(root.resolve("x"));
+        write(root.resolve("x/y"), "y");
+
+        final Map<String, DirectorySync.Entry> local = sync.scan();
+        Assert.assertEquals(Arrays.asList("a", "x"), sync.deleted(local));
+        Assert.assertEquals(Arrays.asList("x", "x/y"), sync.changed(local));
+    }
+
+    @Test
+    public void saveManifest() throws IOException {
+        final Path root = tmp.newFolder("src").toPath();
+        write(root.resolve("dir with spaces/file name.txt"), "content");
+        final DirectorySync sync = new DirectorySync(null, "c", root, "/app");
+        sync.commit(sync.scan());
+        final Path manifest = tmp.newFile("manifest").toPath();
+        sync.save(manifest);
+
+        final DirectorySync other = new DirectorySync(null, "c", root, "/app");
+        other.load(manifest);
+        sync(other);
+    }
+
+    /**
+     * Container directory <code>/app</code> as seen by a {@link FakeDaemon}, recording archives and commands received.
+     */
+    private static class Container {
+        volatile String mtime;
+        volatile int exitCode;
+        final List<List<String>> archives = new CopyOnWriteArrayList<>();
+        final List<List<String>> commands = new CopyOnWriteArrayList<>();
+
+        String handle(String request, byte[] body) throws IOException {
+            if (request.startsWith("HEAD /v1.40/containers/c/archive?path=/app ")) {
+                if (mtime == null) return "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n";
+                final String stat = "{\"name\":\"app\",\"size\":4096,\"mode\":2147484141,\"mtime\":\"" + mtime + "\"}";
+                return "HTTP/1.1 200 OK\r\nX-Docker-Container-Path-Stat: " +
+                        Base64.getEncoder().encodeToString(stat.getBytes(UTF_8)) + "\r\nContent-Length: 0\r\n\r\n";
+            }
+            if (request.startsWith("PUT /v1.40/containers/c/archive?path=/&")) {
+                final List<String> names = new ArrayList<>();
+                InputStream in = new ByteArrayInputStream(body);
+                if (body.length > 1 && body[0] == (byte) 0x1f && body[1] == (byte) 0x8b) {
+                    in = new GZIPInputStream(in);
+                }
+                try (TarArchiveInputStream tar = new TarArchiveInputStream(in)) {
+                    TarArchiveEntry entry;
+                    while ((entry = tar.getNextTarEntry()) != null) {
+                        names.add(entry.getName());
+                    }
+                }
+                archives.add(names);
+                if (mtime == null) mtime = "2020-11-02T10:00:00Z";
+                return "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n";
+            }
+            if (request.startsWith("POST /v1.40/containers/c/exec ")) {
+                commands.add(HttpRestClient.createGson().fromJson(new String(body, UTF_8), ExecConfig.class).getCmd());
+                return FakeDaemon.json(201, "{\"Id\":\"e1\"}");
+            }
+            if (request.startsWith("POST /v1.40/exec/e1/start ")) {
+                final String stderr = exitCode == 0 ? "" : "\u0002\u0000\u0000\u0000\u0000\u0000\u0000\u0009read-only";
+                return "HTTP/1.1 200 OK\r\nContent-Type: application/vnd.docker.raw-stream\r\nConnection: close\r\n\r\n" + stderr;
+            }
+            if (request.startsWith("GET /v1.40/exec/e1/json ")) {
+                return FakeDaemon.json(200, "{\"ExitCode\":" + exitCode + "}");
+            }
+            throw new IOException("Unexpected request " + request);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void syncToContainer() throws Exception {
+        final Path root = tmp.newFolder("src").toPath();
+        write(root.resolve("a.txt"), "a");
+        write(root.resolve("dir/b.txt"), "b");
+        final Container container = new Container();
+        try (FakeDaemon daemon = new FakeDaemon(container::handle);
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            final DirectorySync sync = new DirectorySync(client, "c", root, "/app");
+
+            // target is created, from parent directory
+            DirectorySync.Result result = sync.sync();
+            Assert.assertEquals(Arrays.asList("app/", "app/a.txt", "app/dir/", "app/dir/b.txt"), container.archives.get(0));
+            Assert.assertEquals(4, result.getSent());
+
+            result = sync.sync();
+            Assert.assertEquals(0, result.getSent());
+            Assert.assertEquals(1, container.archives.size());
+
+            write(root.resolve("a.txt"), "changed");
+            result = sync.sync();
+            Assert.assertEquals(Collections.singletonList("app/a.txt"), container.archives.get(1));
+            Assert.assertEquals(7, result.getBytes());
+
+            Files.delete(root.resolve("dir/b.txt"));
+            Files.delete(root.resolve("dir"));
+            result = sync.sync();
+            Assert.assertEquals(1, result.getDeleted());
+            Assert.assertEquals(Arrays.asList("rm", "-rf", "--", "/app/dir"), container.commands.get(0));
+            Assert.assertEquals(2, container.archives.size());
+
+            // container re-created, all files are sent again
+            container.mtime = "2020-11-02T11:00:00Z";
+            result = sync.sync();
+            Assert.assertEquals(Collections.singletonList("app/a.txt"), container.archives.get(2));
+            Assert.assertEquals(1, result.getSent());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failOnDeleteError() throws Exception {
+        final Path root = tmp.newFolder("src").toPath();
+        write(root.resolve("a.txt"), "a");
+        final Container container = new Container();
+        try (FakeDaemon daemon = new FakeDaemon(container::handle);
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            final DirectorySync sync = new DirectorySync(client, "c", root, "/app");
+            sync.sync();
+
+            Files.delete(root.resolve("a.txt"));
+            container.exitCode = 1;
+            try {
+                sync.sync();
+                Assert.fail("rm failure should be reported");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().endsWith("read-only"));
+            }
+        }
+    }
+}
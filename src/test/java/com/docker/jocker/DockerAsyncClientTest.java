@@ -0,0 +1,28 @@
+package com.docker.jocker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class DockerAsyncClientTest {
+
+    @Test(timeout = 10_000)
+    public void reportErrorStatus() throws Exception {
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> FakeDaemon.json(500, "{\"message\":\"daemon is broken\"}"));
+             DockerAsyncClient client = new DockerAsyncClient(daemon.getHost(), 1)) {
+            try {
+                client.containerInspect("c").get(5, TimeUnit.SECONDS);
+                Assert.fail("error status should be reported");
+            } catch (ExecutionException e) {
+                final HttpStatusException status = (HttpStatusException) e.getCause();
+                Assert.assertEquals(500, status.getStatus());
+                Assert.assertEquals("daemon is broken", status.getMessage());
+            }
+        }
+    }
+}
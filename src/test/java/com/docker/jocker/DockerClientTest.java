@@ -118,7 +118,7 @@ public class DockerClientTest {
         String container = docker.containerCreate(new ContainerSpec().image("hello-world").labels(label).tty(true), null).getId();
         docker.containerStart(container);
 
-        InputStream in = docker.containerLogs(container, true, true, false, true, 0, null);
+        InputStream in = docker.containerLogs(container, true, true, false, false, 0, null);
         final ByteArrayOutputStream bos = new ByteArrayOutputStream();
         IOUtils.copy(in, bos);
         final String output = bos.toString();
@@ -126,6 +126,22 @@ public class DockerClientTest {
         assertTrue(output.contains("Hello from Docker!\r\nThis message shows that your installation appears to be working correctly."));
     }
 
+    @Test
+    public void containerLogLines() throws IOException {
+        docker.imagePull("hello-world", null, null, System.out::println);
+        String container = docker.containerCreate(new ContainerSpec().image("hello-world").labels(label), null).getId();
+        docker.containerStart(container);
+
+        final List<String> lines = new ArrayList<>();
+        docker.containerLogs(container, true, true, false, true, 0, null, (stream, timestamp, line) -> {
+            assertTrue(timestamp > 0);
+            final byte[] b = new byte[line.remaining()];
+            line.get(b);
+            lines.add(new String(b, UTF_8));
+        });
+        assertTrue(lines.contains("Hello from Docker!"));
+    }
+
     @Test
     public void containerAttach() throws IOException {
         docker.imagePull("alpine", null, null, System.out::println);
@@ -0,0 +1,109 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.EventsFilters;
+import com.docker.jocker.model.SystemEventsResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class EventBusTest {
+
+    private static SystemEventsResponse event(String action) {
+        return new SystemEventsResponse().type("container").action(action);
+    }
+
+    @Test
+    public void filterEvents() throws IOException, InterruptedException {
+        final EventBus.Subscription subscription = new EventBus.Subscription(new EventsFilters().event("die"), 10, EventBus.Overflow.BLOCK, s -> {});
+        subscription.offer(event("start"));
+        subscription.offer(event("die"));
+        Assert.assertEquals("die", subscription.take().getAction());
+        Assert.assertNull(subscription.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void dropNewest() throws IOException, InterruptedException {
+        final EventBus.Subscription subscription = new EventBus.Subscription(null, 2, EventBus.Overflow.DROP_NEWEST, s -> {});
+        subscription.offer(event("create"));
+        subscription.offer(event("start"));
+        subscription.offer(event("die"));
+        Assert.assertEquals(1, subscription.getDropped());
+        Assert.assertEquals("create", subscription.take().getAction());
+        Assert.assertEquals("start", subscription.take().getAction());
+    }
+
+    @Test
+    public void dropOldest() throws IOException, InterruptedException {
+        final EventBus.Subscription subscription = new EventBus.Subscription(null, 2, EventBus.Overflow.DROP_OLDEST, s -> {});
+        subscription.offer(event("create"));
+        subscription.offer(event("start"));
+        subscription.offer(event("die"));
+        Assert.assertEquals(1, subscription.getDropped());
+        Assert.assertEquals("start", subscription.take().getAction());
+        Assert.assertEquals("die", subscription.take().getAction());
+    }
+
+    @Test
+    public void reportFailureAfterQueuedEvents() throws InterruptedException {
+        final EventBus.Subscription subscription = new EventBus.Subscription(null, 2, EventBus.Overflow.BLOCK, s -> {});
+        subscription.offer(event("start"));
+        final IOException failure = new IOException("invalid filter");
+        subscription.fail(failure);
+        for (int i = 0; i < 2; i++) {
+            try {
+                subscription.poll(0, TimeUnit.MILLISECONDS);
+                if (i > 0) Assert.fail("failure should be thrown");
+            } catch (IOException e) {
+                Assert.assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void wakeUpSubscribersOnClose() throws Exception {
+        // events stream is kept open by daemon after first event
+        final String event = "{\"Type\":\"container\",\"Action\":\"start\",\"Actor\":{\"ID\":\"a1\"},\"timeNano\":1461943101381709551}";
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n" +
+                "Transfer-Encoding: chunked\r\n\r\n" + Integer.toHexString(event.length()) + "\r\n" + event + "\r\n");
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            final EventBus bus = new EventBus(client);
+            final EventBus.Subscription subscription = bus.subscribe(null, 10, EventBus.Overflow.BLOCK);
+            Assert.assertEquals("start", subscription.take().getAction());
+
+            final CompletableFuture<SystemEventsResponse> next = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return subscription.take();
+                } catch (IOException | InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+            });
+            Thread.sleep(100);
+            Assert.assertFalse(next.isDone());
+            bus.close();
+            try {
+                next.get(5, TimeUnit.SECONDS);
+                Assert.fail("close should be reported");
+            } catch (ExecutionException e) {
+                Assert.assertEquals("Event bus is closed", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void unsubscribe() {
+        final List<EventBus.Subscription> subscriptions = new ArrayList<>();
+        final EventBus.Subscription subscription = new EventBus.Subscription(null, 1, EventBus.Overflow.BLOCK, subscriptions::add);
+        subscription.close();
+        Assert.assertSame(subscription, subscriptions.get(0));
+    }
+}
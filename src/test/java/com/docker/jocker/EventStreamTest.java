@@ -0,0 +1,61 @@
+package com.docker.jocker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class EventStreamTest {
+
+    private static final String EVENT = "{\"Type\":\"container\",\"Action\":\"start\",\"Actor\":{\"ID\":\"a1\"}," +
+            "\"time\":1461943101,\"timeNano\":1461943101381709551}";
+
+    @Test(timeout = 10_000)
+    public void resumeOnConnectionLossOnly() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> {
+            if (requests.incrementAndGet() == 1) {
+                // connection lost after first event
+                return FakeDaemon.chunked(false, EVENT);
+            }
+            Assert.assertTrue(request, request.contains("since=1461943101.381709551"));
+            return FakeDaemon.json(400, "{\"message\":\"invalid filter\"}");
+        });
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            final List<String> received = new ArrayList<>();
+            final EventStream stream = new EventStream(client, null, null);
+            try {
+                stream.consume(event -> {
+                    received.add(event.getAction());
+                    return false;
+                });
+                Assert.fail("error status should be thrown");
+            } catch (HttpStatusException e) {
+                Assert.assertEquals(400, e.getStatus());
+                Assert.assertEquals("invalid filter", e.getMessage());
+            }
+            Assert.assertEquals(2, requests.get());
+            Assert.assertEquals(1, received.size());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failOnMalformedEvent() throws Exception {
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> FakeDaemon.chunked(true, "[\"not an event\"]"));
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            final EventStream stream = new EventStream(client, null, null);
+            try {
+                stream.consume(event -> false);
+                Assert.fail("malformed event should be thrown");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.ChunkedInputStream;
+import com.docker.jocker.io.HttpInputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Stand-in for docker daemon over TCP, answering requests with canned HTTP responses. Connections are kept alive, unless
+ * response has a <code>Connection: close</code> header, so a response can also be cut short to simulate a lost
+ * connection.
+ *
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+class FakeDaemon implements Closeable {
+
+    @FunctionalInterface
+    interface Handler {
+        /**
+         * @param request request line, like <code>GET /version HTTP/1.1</code>
+         * @param body request body, de-chunked
+         * @return raw HTTP response
+         */
+        String handle(String request, byte[] body) throws IOException;
+    }
+
+    private final ServerSocket server;
+    private final Handler handler;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    FakeDaemon(Handler handler) throws IOException {
+        this.server = new ServerSocket(0);
+        this.handler = (request, body) -> request.startsWith("GET /version ")
+                ? json(200, "{\"ApiVersion\":\"1.40\"}")
+                : handler.handle(request, body);
+        final Thread thread = new Thread(this::accept, "fake-daemon");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    String getHost() {
+        return "tcp://localhost:" + server.getLocalPort();
+    }
+
+    /**
+     * @return number of connections opened by client so far
+     */
+    int getConnections() {
+        return connections.get();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                final Socket socket = server.accept();
+                connections.incrementAndGet();
+                final Thread thread = new Thread(() -> serve(socket), "fake-daemon-connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            final HttpInputStream in = new HttpInputStream(s.getInputStream());
+            final OutputStream out = s.getOutputStream();
+            while (true) {
+                final Map<String, String> headers = in.readHeaders();
+                String request = null;
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    // request line is parsed as a header, split on first ':' if query has one
+                    if (header.getKey().endsWith(" HTTP/1.1")) request = header.getKey();
+                    if (header.getValue().endsWith(" HTTP/1.1")) request = header.getKey() + ':' + header.getValue();
+                }
+                if (request == null) return;
+
+                final byte[] body;
+                if ("chunked".equals(headers.get("Transfer-Encoding"))) {
+                    body = IOUtils.toByteArray(new ChunkedInputStream(in));
+                } else if (headers.containsKey("Content-Length")) {
+                    body = IOUtils.toByteArray(in, Long.parseLong(headers.get("Content-Length").trim()));
+                } else {
+                    body = new byte[0];
+                }
+                final String response = handler.handle(request, body);
+                out.write(response.getBytes(UTF_8));
+                out.flush();
+                if (response.contains("\r\nConnection: close\r\n")) return;
+            }
+        } catch (IOException e) {
+            // client closed connection
+        }
+    }
+
+    static String json(int status, String json) {
+        return "HTTP/1.1 " + status + " Status\r\nContent-Type: application/json\r\n" +
+                "Content-Length: " + json.getBytes(UTF_8).length + "\r\n\r\n" + json;
+    }
+
+    /**
+     * @return a chunked response, one chunk per message, which is cut before its end if <code>complete</code> is false
+     */
+    static String chunked(boolean complete, String... messages) {
+        final StringBuilder response = new StringBuilder("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n");
+        if (!complete) {
+            response.append("Connection: close\r\n");
+        }
+        response.append("Transfer-Encoding: chunked\r\n\r\n");
+        for (String message : messages) {
+            response.append(Integer.toHexString(message.getBytes(UTF_8).length)).append("\r\n")
+                    .append(message).append("\r\n");
+        }
+        if (complete) {
+            response.append("0\r\n\r\n");
+        }
+        return response.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
@@ -0,0 +1,249 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.ContainerSummary;
+import com.docker.jocker.model.ContainerSummaryInner;
+import com.docker.jocker.model.Port;
+import com.docker.jocker.model.SystemEventsResponse;
+import com.docker.jocker.io.HttpInputStream;
+import com.google.gson.Gson;
+import jnr.unixsocket.UnixServerSocketChannel;
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class HttpRestClientTest {
+
+    private static final String CONTAINERS = "[{" +
+            "\"Id\":\"8dfafdbc3a40\",\"Names\":[\"/boring_feynman\"],\"Image\":\"ubuntu:latest\"," +
+            "\"Command\":\"echo 1\",\"Created\":1367854155,\"State\":\"Exited\",\"Status\":\"Exit 0\"," +
+            "\"Ports\":[{\"PrivatePort\":2222,\"PublicPort\":3333,\"Type\":\"tcp\"}]," +
+            "\"Labels\":{\"com.example.vendor\":\"Acme\"},\"SizeRw\":12288,\"SizeRootFs\":null," +
+            "\"HostConfig\":{\"NetworkMode\":\"default\"}," +
+            "\"NetworkSettings\":{\"Networks\":{\"bridge\":{\"NetworkID\":\"7ea29fc1412292a2\",\"IPPrefixLen\":16,\"Aliases\":null}}}," +
+            "\"Mounts\":[{\"Target\":\"/data\",\"Type\":\"volume\",\"ReadOnly\":false}]," +
+            "\"Unknown\":{\"nested\":[1,2,3]}" +
+            "}]";
+
+    @Test
+    public void generatedAdaptersMatchReflection() {
+        final Gson gson = HttpRestClient.createGson();
+        final ContainerSummary summary = gson.fromJson(CONTAINERS, ContainerSummary.class);
+        Assert.assertEquals(new Gson().fromJson(CONTAINERS, ContainerSummary.class), summary);
+
+        final ContainerSummaryInner container = summary.get(0);
+        Assert.assertEquals(Long.valueOf(1367854155), container.getCreated());
+        Assert.assertNull(container.getSizeRootFs());
+        Assert.assertEquals(Port.TypeEnum.TCP, container.getPorts().get(0).getType());
+        Assert.assertEquals(Integer.valueOf(16), container.getNetworkSettings().getNetworks().get("bridge").getIpPrefixLen());
+
+        // round trip
+        Assert.assertEquals(summary, gson.fromJson(gson.toJson(summary), ContainerSummary.class));
+    }
+
+    @Test
+    public void decodeProjection() throws IOException {
+        final HttpRestClient client = new HttpRestClient(URI.create("unix:///var/run/docker.sock"), null);
+        final InputStream body = new ByteArrayInputStream((CONTAINERS + "\n").getBytes(UTF_8));
+        final HttpRestClient.Response<InputStream> response = new HttpRestClient.Response<>(Collections.emptyMap(), body, body);
+        final ContainerSummary summary = client.readBody(response, ContainerSummary.class,
+                new HashSet<>(Arrays.asList("Id", "Names", "State", "Labels")));
+
+        final ContainerSummaryInner container = summary.get(0);
+        Assert.assertEquals("8dfafdbc3a40", container.getId());
+        Assert.assertEquals("/boring_feynman", container.getNames().get(0));
+        Assert.assertEquals("Exited", container.getState());
+        Assert.assertEquals("Acme", container.getLabels().get("com.example.vendor"));
+        Assert.assertNull(container.getImage());
+        Assert.assertNull(container.getPorts());
+        Assert.assertNull(container.getNetworkSettings());
+        Assert.assertEquals(-1, body.read());
+    }
+
+    @Test
+    public void decodeEvent() {
+        final String json = "{\"Type\":\"container\",\"Action\":\"start\"," +
+                "\"Actor\":{\"ID\":\"ede54ee1afda\",\"Attributes\":{\"image\":\"alpine\",\"name\":\"my-container\"}}," +
+                "\"scope\":\"local\",\"time\":1461943101,\"timeNano\":1461943101381709551}";
+        final SystemEventsResponse event = HttpRestClient.createGson().fromJson(json, SystemEventsResponse.class);
+        Assert.assertEquals("start", event.getAction());
+        Assert.assertEquals("my-container", event.getActor().getAttributes().get("name"));
+        Assert.assertEquals(Long.valueOf(1461943101381709551L), event.getTimeNano());
+    }
+
+    @Test
+    public void reuseDrainedConnection() throws Exception {
+        final AtomicInteger accepted = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    while (true) {
+                        final Socket socket = server.accept();
+                        accepted.incrementAndGet();
+                        CompletableFuture.runAsync(() -> {
+                            try (Socket s = socket) {
+                                final HttpInputStream in = new HttpInputStream(s.getInputStream());
+                                while (!in.readHeaders().isEmpty()) {
+                                    s.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(UTF_8));
+                                }
+                            } catch (IOException e) {
+                                // client closed connection
+                            }
+                        });
+                    }
+                } catch (IOException e) {
+                    // server closed
+                }
+            });
+
+            final HttpRestClient client = new HttpRestClient(URI.create("tcp://localhost:" + server.getLocalPort()), null);
+            for (int i = 0; i < 3; i++) {
+                try (HttpRestClient.Response<?> r = client.doGET("/_ping")) {
+                    Assert.assertEquals("ok", r.readBody());
+                }
+                Assert.assertEquals(1, client.pool.idleCount());
+            }
+            Assert.assertEquals(1, accepted.get());
+
+            // closed before body has been read, connection can't be reused
+            client.doGET("/_ping").close();
+            Assert.assertEquals(0, client.pool.idleCount());
+            client.close();
+        }
+    }
+
+    @Test
+    public void closeStreamReleasesConnection() throws Exception {
+        try (FakeDaemon daemon = new FakeDaemon((request, body) ->
+                "HTTP/1.1 200 OK\r\nContent-Type: application/x-tar\r\nContent-Length: 4\r\n\r\ntar!");
+             HttpRestClient client = new HttpRestClient(URI.create(daemon.getHost()), null)) {
+            try (InputStream in = client.doGET("/containers/c/export").openStream()) {
+                Assert.assertEquals("tar!", IOUtils.toString(in, UTF_8));
+            }
+            Assert.assertEquals(1, client.pool.idleCount());
+
+            // caller stopped reading, connection is discarded
+            try (InputStream in = client.doGET("/containers/c/export").openStream()) {
+                Assert.assertEquals('t', in.read());
+            }
+            Assert.assertEquals(0, client.pool.idleCount());
+            Assert.assertEquals(1, daemon.getConnections());
+        }
+    }
+
+    @Test
+    public void closeImageStreamReleasesConnection() throws Exception {
+        try (FakeDaemon daemon = new FakeDaemon((request, body) ->
+                "HTTP/1.1 200 OK\r\nContent-Type: application/x-tar\r\nContent-Length: 4\r\n\r\ntar!");
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            try (InputStream in = client.imageGet("busybox")) {
+                Assert.assertEquals("tar!", IOUtils.toString(in, UTF_8));
+            }
+            Assert.assertEquals(1, client.pool.idleCount());
+
+            try (InputStream in = client.imageGetAll(Arrays.asList("busybox", "alpine"))) {
+                Assert.assertEquals('t', in.read());
+            }
+            Assert.assertEquals(0, client.pool.idleCount());
+            Assert.assertEquals(1, daemon.getConnections());
+        }
+    }
+
+    @Test
+    public void uploadFileWithContentLength() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0))) {
+            upload(URI.create("tcp://localhost:" + ((InetSocketAddress) server.getLocalAddress()).getPort()), server::accept);
+        }
+    }
+
+    @Test
+    public void uploadFileOverUnixSocket() throws Exception {
+        final Path dir = Files.createTempDirectory("jocker");
+        final File sock = dir.resolve("docker.sock").toFile();
+        try (UnixServerSocketChannel server = UnixServerSocketChannel.open()) {
+            server.socket().bind(new UnixSocketAddress(sock));
+            upload(URI.create("unix://" + sock.getAbsolutePath()), server::accept);
+        } finally {
+            Files.deleteIfExists(sock.toPath());
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void transferToJdkSocketsOnly() throws IOException {
+        try (SocketChannel tcp = SocketChannel.open();
+             UnixSocketChannel unix = UnixSocketChannel.open()) {
+            Assert.assertTrue(HttpRestClient.canTransferTo(tcp));
+            Assert.assertFalse(HttpRestClient.canTransferTo(unix));
+            Assert.assertFalse(HttpRestClient.canTransferTo(Channels.newChannel(new ByteArrayOutputStream())));
+        }
+    }
+
+    private static void upload(URI uri, Callable<ByteChannel> accept) throws Exception {
+        final byte[] content = new byte[300_000];
+        new Random(42).nextBytes(content);
+        final Path file = Files.createTempFile("jocker", ".tar");
+        Files.write(file, content);
+
+        try {
+            final CompletableFuture<Map<String, String>> request = CompletableFuture.supplyAsync(() -> {
+                try (ByteChannel socket = accept.call()) {
+                    final HttpInputStream in = new HttpInputStream(Channels.newInputStream(socket));
+                    final Map<String, String> headers = new HashMap<>(in.readHeaders());
+                    final byte[] body = IOUtils.toByteArray(in, Long.parseLong(headers.get("Content-Length")));
+                    headers.put("body-matches", String.valueOf(Arrays.equals(content, body)));
+                    Channels.newOutputStream(socket).write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(UTF_8));
+                    return headers;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+
+            final HttpRestClient client = new HttpRestClient(uri, null);
+            try (HttpRestClient.Response<?> r = client.doPOST("/images/load", file,
+                    Collections.singletonMap("Content-Type", "application/x-tar"))) {
+                Assert.assertEquals(-1, r.getBody().read());
+            }
+            final Map<String, String> headers = request.get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(String.valueOf(content.length), headers.get("Content-Length"));
+            Assert.assertEquals("application/x-tar", headers.get("Content-Type"));
+            Assert.assertEquals("true", headers.get("body-matches"));
+            client.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.BuildContext;
+import com.docker.jocker.io.TarArchive;
+import com.docker.jocker.model.BuildImageRequest;
+import com.docker.jocker.model.BuildInfo;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ImageBuildTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 10_000)
+    public void readProgressTillEndOfStream() throws Exception {
+        // several messages per chunk, and a message split across chunks
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> FakeDaemon.chunked(true,
+                "{\"stream\":\"Step 1/2 : FROM scratch\\n\"}\r\n{\"stream\":\"Step 2/2 : COPY . /\\n\"}\r\n{\"aux\":",
+                "{\"ID\":\"sha256:0123456789ab\"}}\r\n"));
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            final List<BuildInfo> messages = new ArrayList<>();
+            client.imageBuild(new BuildImageRequest(), null, new TarArchive(), messages::add);
+            Assert.assertEquals(3, messages.size());
+            Assert.assertEquals("Step 2/2 : COPY . /\n", messages.get(1).getStream());
+            Assert.assertEquals("sha256:0123456789ab", messages.get(2).getAux().getID());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failOnBuildError() throws Exception {
+        final Path dir = folder.newFolder().toPath();
+        Files.write(dir.resolve("Dockerfile"), "FROM scratch\nRUN false\n".getBytes());
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> request.startsWith("GET /v1.40/images/json")
+                ? FakeDaemon.json(200, "[]")
+                : FakeDaemon.chunked(true,
+                    "{\"stream\":\"Step 1/2 : FROM scratch\\n\"}\r\n",
+                    "{\"errorDetail\":{\"code\":1,\"message\":\"The command '/bin/sh -c false' returned a non-zero code: 1\"}," +
+                    "\"error\":\"The command '/bin/sh -c false' returned a non-zero code: 1\"}\r\n"));
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            final List<BuildInfo> messages = new ArrayList<>();
+            try {
+                client.imageBuild(new BuildImageRequest(), null, new BuildContext(dir), messages::add);
+                Assert.fail("build error not reported");
+            } catch (IOException e) {
+                Assert.assertEquals("Build failed: The command '/bin/sh -c false' returned a non-zero code: 1", e.getMessage());
+            }
+            // whole stream has been consumed before failing
+            Assert.assertEquals(2, messages.size());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failOnTruncatedProgress() throws Exception {
+        final Path dir = folder.newFolder().toPath();
+        Files.write(dir.resolve("Dockerfile"), "FROM scratch\n".getBytes());
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> request.startsWith("GET /v1.40/images/json")
+                ? FakeDaemon.json(200, "[]")
+                : FakeDaemon.chunked(false, "{\"stream\":\"Step 1/1 : FROM scratch\\n\"}\r\n"));
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            try {
+                client.imageBuild(new BuildImageRequest(), null, new BuildContext(dir), info -> {});
+                Assert.fail("lost connection not reported");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void tagExistingImage() throws Exception {
+        final Path dir = folder.newFolder().toPath();
+        Files.write(dir.resolve("Dockerfile"), "FROM scratch\n".getBytes());
+        final List<String> requests = new ArrayList<>();
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> {
+            requests.add(request);
+            if (request.startsWith("GET /v1.40/images/json")) {
+                return FakeDaemon.json(200, "[{\"Id\":\"sha256:0123456789ab\"}]");
+            }
+            return "HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n";
+        });
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            Assert.assertFalse(client.imageBuild(new BuildImageRequest().tag("app:1.0"), null, new BuildContext(dir), info -> {}));
+            Assert.assertEquals(2, requests.size());
+            Assert.assertTrue(requests.get(0), requests.get(0).contains(DockerClient.BUILD_DIGEST_LABEL));
+            Assert.assertEquals("POST /v1.40/images/sha256:0123456789ab/tag?repo=app&tag=1.0 HTTP/1.1", requests.get(1));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void digestIgnoresOutputOptions() throws Exception {
+        final Path dir = folder.newFolder().toPath();
+        Files.write(dir.resolve("Dockerfile"), "FROM scratch\n".getBytes());
+        final List<String> digests = new ArrayList<>();
+        final Pattern digest = Pattern.compile("sha256:[0-9a-f]{64}");
+        try (FakeDaemon daemon = new FakeDaemon((request, body) -> {
+            final Matcher m = digest.matcher(request);
+            if (m.find()) digests.add(m.group());
+            return request.startsWith("GET /v1.40/images/json")
+                    ? FakeDaemon.json(200, "[]")
+                    : FakeDaemon.chunked(true, "{\"aux\":{\"ID\":\"sha256:0123456789ab\"}}");
+        });
+             DockerClient client = new DockerClient(daemon.getHost())) {
+            final BuildContext context = new BuildContext(dir);
+            client.imageBuild(new BuildImageRequest().quiet(false).rm(true), null, context, info -> {});
+            client.imageBuild(new BuildImageRequest().quiet(true).rm(false).forcerm(true), null, context, info -> {});
+            // forced build is labelled so it can be reused by a regular one
+            client.imageBuild(new BuildImageRequest().nocache(true), null, context, info -> {});
+            Assert.assertEquals(5, digests.size());
+            for (String d : digests) {
+                Assert.assertEquals(digests.get(0), d);
+            }
+        }
+    }
+}
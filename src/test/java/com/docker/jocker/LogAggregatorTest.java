@@ -0,0 +1,63 @@
+package com.docker.jocker;
+
+import com.docker.jocker.io.DockerMultiplexedFrameReader.StreamType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class LogAggregatorTest {
+
+    private static void add(LogAggregator.Source source, long timestamp, String line) {
+        source.add(StreamType.STDOUT, timestamp, ByteBuffer.wrap(line.getBytes(US_ASCII)));
+    }
+
+    private static String next(BlockingQueue<LogAggregator.LogLine> merged) throws InterruptedException {
+        final LogAggregator.LogLine line = merged.poll(5, TimeUnit.SECONDS);
+        return line.getContainer() + ":" + new String(line.getContent(), US_ASCII);
+    }
+
+    @Test
+    public void mergeByTimestamp() throws Exception {
+        final BlockingQueue<LogAggregator.LogLine> merged = new LinkedBlockingQueue<>();
+        final LogAggregator aggregator = new LogAggregator(null, 1, TimeUnit.HOURS, merged::add);
+        final LogAggregator.Source a = aggregator.register("a");
+        final LogAggregator.Source b = aggregator.register("b");
+
+        add(a, 10, "a10");
+        add(a, 30, "a30");
+        // b might still send older lines
+        Assert.assertNull(merged.poll(100, TimeUnit.MILLISECONDS));
+
+        add(b, 20, "b20");
+        Assert.assertEquals("a:a10", next(merged));
+        Assert.assertEquals("b:b20", next(merged));
+        Assert.assertNull(merged.poll(100, TimeUnit.MILLISECONDS));
+
+        b.finish();
+        Assert.assertEquals("a:a30", next(merged));
+        aggregator.close();
+    }
+
+    @Test
+    public void reorderWindow() throws Exception {
+        final BlockingQueue<LogAggregator.LogLine> merged = new LinkedBlockingQueue<>();
+        final LogAggregator aggregator = new LogAggregator(null, 200, TimeUnit.MILLISECONDS, merged::add);
+        final LogAggregator.Source a = aggregator.register("a");
+        aggregator.register("b");
+
+        add(a, 10, "a10");
+        // b is silent, line is released after reorder window
+        Assert.assertNull(merged.poll(50, TimeUnit.MILLISECONDS));
+        Assert.assertEquals("a:a10", next(merged));
+        aggregator.close();
+    }
+}
@@ -0,0 +1,56 @@
+package com.docker.jocker;
+
+import com.docker.jocker.model.SystemEventsResponse;
+import com.docker.jocker.model.SystemEventsResponseActor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class RecentEventsTest {
+
+    private static SystemEventsResponse event(String action, long timeNano) {
+        return new SystemEventsResponse()
+                .type("container")
+                .action(action)
+                .actor(new SystemEventsResponseActor().ID("ede54ee1afda"))
+                .timeNano(timeNano);
+    }
+
+    @Test
+    public void recentKeys() {
+        final RecentEvents recent = new RecentEvents(3);
+        for (long time = 1; time <= 4; time++) {
+            recent.add(RecentEvents.key(event("start", time)));
+        }
+        Assert.assertTrue(recent.contains(RecentEvents.key(event("start", 1))));
+        Assert.assertTrue(recent.contains(RecentEvents.key(event("start", 4))));
+
+        // capacity was rounded to 4
+        recent.add(RecentEvents.key(event("start", 5)));
+        Assert.assertFalse(recent.contains(RecentEvents.key(event("start", 1))));
+        Assert.assertTrue(recent.contains(RecentEvents.key(event("start", 5))));
+    }
+
+    @Test
+    public void eventKey() {
+        final long time = 1461943101381709551L;
+        Assert.assertEquals(RecentEvents.key(event("start", time)), RecentEvents.key(event("start", time)));
+        Assert.assertNotEquals(RecentEvents.key(event("start", time)), RecentEvents.key(event("die", time)));
+        Assert.assertNotEquals(RecentEvents.key(event("start", time)), RecentEvents.key(event("start", time + 1)));
+    }
+
+    @Test
+    public void actorsWithSameHash() {
+        // "Aa" and "BB" have the same String hashCode
+        final long time = 1461943101381709551L;
+        final SystemEventsResponse aa = event("start", time);
+        aa.getActor().setID("Aa");
+        final SystemEventsResponse bb = event("start", time);
+        bb.getActor().setID("BB");
+        final RecentEvents recent = new RecentEvents(4);
+        recent.add(RecentEvents.key(aa));
+        Assert.assertFalse(recent.contains(RecentEvents.key(bb)));
+    }
+}
@@ -0,0 +1,118 @@
+package com.docker.jocker;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class StreamPublisherTest {
+
+    /** source for integers up to <code>count</code> */
+    private static class CountingSource implements StreamPublisher.Source<Integer> {
+
+        final int count;
+        int reads;
+        boolean closed;
+
+        CountingSource(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public Integer next() {
+            return reads < count ? ++reads : null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class RecordingSubscriber implements Subscriber<Integer> {
+
+        Subscription subscription;
+        final List<Integer> items = new ArrayList<>();
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    @Test
+    public void readOnDemand() {
+        final CountingSource source = new CountingSource(10);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        new StreamPublisher<>(() -> source, Runnable::run).subscribe(subscriber);
+        Assert.assertEquals(0, source.reads);
+
+        subscriber.subscription.request(2);
+        Assert.assertEquals(2, source.reads);
+        Assert.assertEquals(2, subscriber.items.size());
+
+        subscriber.subscription.request(3);
+        Assert.assertEquals(5, source.reads);
+        Assert.assertFalse(subscriber.completed);
+
+        subscriber.subscription.cancel();
+        Assert.assertTrue(source.closed);
+        subscriber.subscription.request(1);
+        Assert.assertEquals(5, subscriber.items.size());
+        Assert.assertNull(subscriber.error);
+    }
+
+    @Test
+    public void complete() {
+        final CountingSource source = new CountingSource(3);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        new StreamPublisher<>(() -> source, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Assert.assertEquals(3, subscriber.items.size());
+        Assert.assertTrue(subscriber.completed);
+        Assert.assertTrue(source.closed);
+    }
+
+    @Test
+    public void invalidRequest() {
+        final CountingSource source = new CountingSource(3);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        new StreamPublisher<>(() -> source, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+        Assert.assertEquals(0, source.reads);
+    }
+
+    @Test
+    public void singleSubscriber() {
+        final StreamPublisher<Integer> publisher = new StreamPublisher<>(() -> new CountingSource(3), Runnable::run);
+        publisher.subscribe(new RecordingSubscriber());
+        final RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+    }
+}
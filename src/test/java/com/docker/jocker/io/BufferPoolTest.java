@@ -0,0 +1,40 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void reuse() {
+        final BufferPool pool = new BufferPool(1024, 1);
+        final ByteBuffer a = pool.acquire();
+        final ByteBuffer b = pool.acquire();
+        Assert.assertTrue(a.isDirect());
+        Assert.assertNotSame(a, b);
+
+        a.put((byte) 1);
+        pool.release(a);
+        pool.release(b);
+        Assert.assertEquals(1, pool.idleCount());
+
+        final ByteBuffer c = pool.acquire();
+        Assert.assertSame(a, c);
+        Assert.assertEquals(0, c.position());
+        Assert.assertEquals(1024, c.remaining());
+        Assert.assertEquals(0, pool.idleCount());
+    }
+
+    @Test
+    public void ignoreForeignBuffers() {
+        final BufferPool pool = new BufferPool(1024, 4);
+        pool.release(ByteBuffer.allocate(1024));
+        pool.release(ByteBuffer.allocateDirect(512));
+        Assert.assertEquals(0, pool.idleCount());
+    }
+}
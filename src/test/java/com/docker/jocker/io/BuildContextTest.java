@@ -0,0 +1,76 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class BuildContextTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void applyDockerIgnore() throws IOException {
+        final Path dir = context();
+
+        final BuildContext context = new BuildContext(dir);
+        Assert.assertEquals(Arrays.asList(".dockerignore", "Dockerfile", "src", "src/Main.java", "src/keep.log"), context.names());
+
+        final List<String> names = new ArrayList<>();
+        try (InputStream in = context.openStream();
+             TarArchiveInputStream tar = new TarArchiveInputStream(in)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        Assert.assertEquals(Arrays.asList(".dockerignore", "Dockerfile", "src/", "src/Main.java", "src/keep.log"), names);
+    }
+
+    @Test
+    public void digest() throws IOException {
+        final Path dir = context();
+        final String digest = new BuildContext(dir).digest();
+        Assert.assertTrue(digest.startsWith("sha256:"));
+
+        // modification time and ignored files don't change digest
+        Files.setLastModifiedTime(dir.resolve("src/Main.java"), FileTime.fromMillis(0));
+        Files.write(dir.resolve("target/out.jar"), "changed".getBytes(UTF_8));
+        Assert.assertEquals(digest, new BuildContext(dir).digest());
+        Assert.assertNotEquals(new BuildContext(dir).digest("t=1"), new BuildContext(dir).digest("t=2"));
+
+        Files.write(dir.resolve("src/Main.java"), "class Main { }".getBytes(UTF_8));
+        Assert.assertNotEquals(digest, new BuildContext(dir).digest());
+    }
+
+    private Path context() throws IOException {
+        final Path dir = tmp.newFolder().toPath();
+        Files.write(dir.resolve(".dockerignore"), "target\n*.log\n**/*.log\n!src/keep.log\nDockerfile\n".getBytes(UTF_8));
+        Files.write(dir.resolve("Dockerfile"), "FROM scratch\nCOPY src /src\n".getBytes(UTF_8));
+        Files.createDirectories(dir.resolve("src"));
+        Files.write(dir.resolve("src/Main.java"), "class Main {}".getBytes(UTF_8));
+        Files.write(dir.resolve("src/keep.log"), "kept".getBytes(UTF_8));
+        Files.write(dir.resolve("src/debug.log"), "ignored".getBytes(UTF_8));
+        Files.write(dir.resolve("build.log"), "ignored".getBytes(UTF_8));
+        Files.createDirectories(dir.resolve("target"));
+        Files.write(dir.resolve("target/out.jar"), "ignored".getBytes(UTF_8));
+        return dir;
+    }
+}
@@ -7,6 +7,9 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
 /**
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
@@ -32,4 +35,79 @@ public class ChunkedInputStreamTest {
         final String out = IOUtils.toString(in);
         Assert.assertEquals("Wikipedia in\r\n\r\nchunks.", out);
     }
+
+    @Test
+    public void readChunkExtensionsAndTrailers() throws IOException {
+        String s = "4;name=value\r\n" +
+                "Wiki\r\n" +
+                "0\r\n" +
+                "Trailer: foo\r\n" +
+                "\r\n" +
+                "next response";
+
+        InputStream raw = new ByteArrayInputStream(s.getBytes(US_ASCII));
+        ChunkedInputStream in = new ChunkedInputStream(raw);
+        Assert.assertEquals("Wiki", IOUtils.toString(in, US_ASCII));
+        Assert.assertTrue(in.isEof());
+        Assert.assertEquals("next response", IOUtils.toString(raw, US_ASCII));
+    }
+
+    @Test
+    public void readByteBuffer() throws IOException {
+        String s = "5\r\n" +
+                "Wiki \r\n" +
+                "1a\r\n" +
+                "abcdefghijklmnopqrstuvwxyz\r\n" +
+                "0\r\n" +
+                "\r\n";
+
+        ChunkedInputStream in = new ChunkedInputStream(new ByteArrayInputStream(s.getBytes(US_ASCII)));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+        StringBuilder out = new StringBuilder();
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            Assert.assertTrue(read <= 8);
+            buffer.flip();
+            while (buffer.hasRemaining()) out.append((char) buffer.get());
+            buffer.clear();
+        }
+        Assert.assertEquals("Wiki abcdefghijklmnopqrstuvwxyz", out.toString());
+    }
+
+    @Test
+    public void readByteBufferFromChannel() throws IOException {
+        String s = "5\r\n" +
+                "Wiki \r\n" +
+                "1a\r\n" +
+                "abcdefghijklmnopqrstuvwxyz\r\n" +
+                "0\r\n" +
+                "\r\n" +
+                "next response";
+
+        // HttpInputStream is a channel, so direct buffer is filled without transfer array
+        HttpInputStream raw = new HttpInputStream(new ByteArrayInputStream(s.getBytes(US_ASCII)), 16);
+        ChunkedInputStream in = new ChunkedInputStream(raw);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        while (in.read(buffer) >= 0) {
+            Assert.assertTrue(buffer.position() <= 31);
+        }
+        buffer.flip();
+        Assert.assertEquals("Wiki abcdefghijklmnopqrstuvwxyz", US_ASCII.decode(buffer).toString());
+        Assert.assertEquals("next response", IOUtils.toString(raw, US_ASCII));
+    }
+
+    @Test
+    public void skip() throws IOException {
+        String s = "5\r\n" +
+                "Wiki \r\n" +
+                "1a\r\n" +
+                "abcdefghijklmnopqrstuvwxyz\r\n" +
+                "0\r\n" +
+                "\r\n";
+
+        ChunkedInputStream in = new ChunkedInputStream(new ByteArrayInputStream(s.getBytes(US_ASCII)));
+        Assert.assertEquals(5, in.skip(10));
+        Assert.assertEquals(20, in.skip(20));
+        Assert.assertEquals("uvwxyz", IOUtils.toString(in, US_ASCII));
+    }
 }
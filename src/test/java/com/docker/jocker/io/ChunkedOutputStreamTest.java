@@ -0,0 +1,43 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ChunkedOutputStreamTest {
+
+    @Test
+    public void writeChunks() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ChunkedOutputStream out = new ChunkedOutputStream(bytes, 4);
+        out.write("Wi".getBytes(US_ASCII));
+        out.write('k');
+        out.write("ipedia in\r\n\r\nchunks.".getBytes(US_ASCII));
+        out.close();
+
+        Assert.assertEquals("4\r\nWiki\r\n" +
+                "13\r\npedia in\r\n\r\nchunks.\r\n" +
+                "0\r\n\r\n", bytes.toString("US-ASCII"));
+
+        final ChunkedInputStream in = new ChunkedInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertEquals("Wikipedia in\r\n\r\nchunks.", IOUtils.toString(in, US_ASCII));
+    }
+
+    @Test
+    public void emptyFlush() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ChunkedOutputStream out = new ChunkedOutputStream(bytes);
+        out.flush();
+        out.close();
+        Assert.assertEquals("0\r\n\r\n", bytes.toString("US-ASCII"));
+    }
+}
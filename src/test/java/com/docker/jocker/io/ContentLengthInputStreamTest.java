@@ -7,6 +7,9 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
 /**
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
@@ -22,4 +25,28 @@ public class ContentLengthInputStreamTest {
         final String out = IOUtils.toString(in);
         Assert.assertEquals("Content-Length", out);
     }
+
+    @Test
+    public void readByteBuffer() throws IOException {
+        String s = "Content-LengthXXXXXXXXXX";
+
+        ContentLengthInputStream in = new ContentLengthInputStream(new HttpInputStream(new ByteArrayInputStream(s.getBytes())), 14);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        Assert.assertEquals(14, in.read(buffer));
+        Assert.assertEquals(64, buffer.limit());
+        Assert.assertEquals(-1, in.read(buffer));
+        Assert.assertTrue(in.isEof());
+        buffer.flip();
+        Assert.assertEquals("Content-Length", US_ASCII.decode(buffer).toString());
+    }
+
+    @Test
+    public void skip() throws IOException {
+        final ContentLengthInputStream in = new ContentLengthInputStream(new ByteArrayInputStream("0123456789XXXX".getBytes(US_ASCII)), 10);
+        Assert.assertEquals(4, in.skip(4));
+        Assert.assertEquals(6, in.skip(100));
+        Assert.assertTrue(in.isEof());
+        Assert.assertEquals(0, in.skip(1));
+        Assert.assertEquals(-1, in.read());
+    }
 }
@@ -0,0 +1,50 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class DockerIgnoreTest {
+
+    @Test
+    public void patterns() throws IOException {
+        final DockerIgnore ignore = DockerIgnore.parse(
+                "# comment\n" +
+                "\n" +
+                "*.md\n" +
+                "/target\n" +
+                "**/*.log\n" +
+                "temp?\n" +
+                "!README.md\n");
+
+        Assert.assertTrue(ignore.isExcluded("CHANGES.md"));
+        Assert.assertFalse(ignore.isExcluded("docs/CHANGES.md"));
+        Assert.assertFalse(ignore.isExcluded("README.md"));
+        Assert.assertTrue(ignore.isExcluded("target"));
+        Assert.assertTrue(ignore.isExcluded("target/classes/Foo.class"));
+        Assert.assertFalse(ignore.isExcluded("src/target"));
+        Assert.assertTrue(ignore.isExcluded("build.log"));
+        Assert.assertTrue(ignore.isExcluded("a/b/build.log"));
+        Assert.assertTrue(ignore.isExcluded("temp1"));
+        Assert.assertFalse(ignore.isExcluded("temp12"));
+        Assert.assertFalse(ignore.isExcluded("# comment"));
+        Assert.assertTrue(ignore.hasExceptions());
+    }
+
+    @Test
+    public void keep() throws IOException {
+        final DockerIgnore ignore = DockerIgnore.parse("*\n").keep("Dockerfile");
+        Assert.assertTrue(ignore.isExcluded("src"));
+        Assert.assertFalse(ignore.isExcluded("Dockerfile"));
+        Assert.assertFalse(DockerIgnore.parse("").keep("Dockerfile").hasExceptions());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidPattern() throws IOException {
+        DockerIgnore.parse("[a-\n");
+    }
+}
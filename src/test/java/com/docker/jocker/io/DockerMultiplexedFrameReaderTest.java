@@ -0,0 +1,74 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.docker.jocker.io.DockerMultiplexedFrameReader.StreamType.STDERR;
+import static com.docker.jocker.io.DockerMultiplexedFrameReader.StreamType.STDOUT;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class DockerMultiplexedFrameReaderTest {
+
+    private static String payload(DockerMultiplexedFrameReader frames) {
+        final ByteBuffer payload = frames.getPayload();
+        final byte[] b = new byte[payload.remaining()];
+        payload.get(b);
+        return new String(b);
+    }
+
+    @Test
+    public void readFrames() throws IOException {
+        final DockerMultiplexedFrameReader frames = new DockerMultiplexedFrameReader(new ByteArrayInputStream(new byte[]{
+                1,0,0,0, 0,0,0,3, 65,66,67,
+                2,0,0,0, 0,0,0,4, 68,69,70,71,
+                // empty frame
+                1,0,0,0, 0,0,0,0,
+                1,0,0,0, 0,0,0,2, 72,73,
+        }));
+
+        Assert.assertTrue(frames.next());
+        Assert.assertEquals(STDOUT, frames.getStreamType());
+        Assert.assertEquals("ABC", payload(frames));
+
+        Assert.assertTrue(frames.next());
+        Assert.assertEquals(STDERR, frames.getStreamType());
+        Assert.assertEquals("DEFG", payload(frames));
+
+        Assert.assertTrue(frames.next());
+        Assert.assertEquals(STDOUT, frames.getStreamType());
+        Assert.assertEquals("HI", payload(frames));
+
+        Assert.assertFalse(frames.next());
+    }
+
+    @Test
+    public void fragments() throws IOException {
+        // buffer can't hold a full frame, and 2nd header gets split at end of buffer
+        final DockerMultiplexedFrameReader frames = new DockerMultiplexedFrameReader(new ByteArrayInputStream(new byte[]{
+                1,0,0,0, 0,0,0,10, 65,66,67,68,69,70,71,72,73,74,
+                2,0,0,0, 0,0,0,3, 75,76,77,
+        }), 12);
+
+        final StringBuilder stdout = new StringBuilder();
+        final StringBuilder stderr = new StringBuilder();
+        while (frames.next()) {
+            (frames.getStreamType() == STDOUT ? stdout : stderr).append(payload(frames));
+        }
+        Assert.assertEquals("ABCDEFGHIJ", stdout.toString());
+        Assert.assertEquals("KLM", stderr.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownFrameType() throws IOException {
+        final DockerMultiplexedFrameReader frames = new DockerMultiplexedFrameReader(new ByteArrayInputStream(new byte[]{
+                4,0,0,0, 0,0,0,2, 68,69,
+        }));
+        frames.next();
+    }
+}
@@ -3,6 +3,7 @@ package com.docker.jocker.io;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PipedInputStream;
@@ -292,6 +293,22 @@ public class DockerMultiplexedInputStreamTest {
         }
     }
 
+    @Test
+    public void testReadByte() throws Exception {
+        final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        try (DockerMultiplexedInputStream stream = new DockerMultiplexedInputStream(new ByteArrayInputStream(new byte[]{
+                1,0,0,0, 0,0,0,1, 65,
+                2,0,0,0, 0,0,0,1, 66,
+                1,0,0,0, 0,0,0,1, 67,
+        }))) {
+            stream.redirectStderr(stderr);
+            Assert.assertEquals(65, stream.read());
+            Assert.assertEquals(67, stream.read());
+            Assert.assertEquals(-1, stream.read());
+            Assert.assertArrayEquals(new byte[]{66}, stderr.toByteArray());
+        }
+    }
+
     @Test
     public void testUnknownFrameType() throws Exception {
         // EOF in header
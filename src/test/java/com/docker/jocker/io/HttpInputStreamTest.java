@@ -0,0 +1,86 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class HttpInputStreamTest {
+
+    private static final String RESPONSE = "HTTP/1.1 200 OK\r\n" +
+            "Api-Version: 1.40\r\n" +
+            "content-type: application/json\r\n" +
+            "Docker-Experimental: false\r\n" +
+            "Ostype: linux\r\n" +
+            "Server: Docker/19.03.12 (linux)\r\n" +
+            "Date: Mon, 02 Nov 2020 10:00:00 GMT\r\n" +
+            "Content-Length: 14\r\n" +
+            "\r\n" +
+            "Content-Length";
+
+    /** count read operations, as those would be syscalls on a socket */
+    static class CountingInputStream extends FilterInputStream {
+        int reads;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            reads++;
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            reads++;
+            return super.read(b, off, len);
+        }
+    }
+
+    @Test
+    public void readResponse() throws IOException {
+        final CountingInputStream socket = new CountingInputStream(new ByteArrayInputStream(RESPONSE.getBytes(US_ASCII)));
+        final HttpInputStream in = new HttpInputStream(socket);
+        Assert.assertEquals(200, in.readStatus());
+        final Map<String, String> headers = in.readHeaders();
+        Assert.assertEquals("application/json", headers.get("Content-Type"));
+        Assert.assertEquals("Docker/19.03.12 (linux)", headers.get("server"));
+        Assert.assertEquals("14", headers.get("Content-Length"));
+
+        // body has been buffered while reading headers
+        Assert.assertEquals(1, socket.reads);
+        final String body = IOUtils.toString(new ContentLengthInputStream(in, 14), US_ASCII);
+        Assert.assertEquals("Content-Length", body);
+    }
+
+    @Test
+    public void readSplitResponse() throws IOException {
+        // socket delivers a single byte per read
+        final HttpInputStream in = new HttpInputStream(new ByteArrayInputStream(RESPONSE.getBytes(US_ASCII)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        }, 64);
+        Assert.assertEquals(200, in.readStatus());
+        Assert.assertEquals("linux", in.readHeaders().get("OSType"));
+        Assert.assertEquals("Content-Length", IOUtils.toString(in, US_ASCII));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidStatus() throws IOException {
+        new HttpInputStream(new ByteArrayInputStream("HTTP/1.1 OK\r\n".getBytes(US_ASCII))).readStatus();
+    }
+}
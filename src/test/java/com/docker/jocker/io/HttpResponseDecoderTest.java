@@ -0,0 +1,98 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class HttpResponseDecoderTest {
+
+    static class Collector implements HttpResponseDecoder.Listener {
+        int status;
+        Map<String, String> headers;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        boolean complete;
+
+        @Override
+        public void headers(int status, Map<String, String> headers) {
+            this.status = status;
+            this.headers = headers;
+        }
+
+        @Override
+        public void body(ByteBuffer data) {
+            while (data.hasRemaining()) body.write(data.get());
+        }
+
+        @Override
+        public void complete() {
+            complete = true;
+        }
+    }
+
+    private static final String CHUNKED = "HTTP/1.1 200 OK\r\n" +
+            "content-type: application/json\r\n" +
+            "Transfer-Encoding: chunked\r\n" +
+            "\r\n" +
+            "4\r\n" +
+            "Wiki\r\n" +
+            "5\r\n" +
+            "pedia\r\n" +
+            "E\r\n" +
+            " in\r\n" +
+            "\r\n" +
+            "chunks.\r\n" +
+            "0\r\n" +
+            "\r\n";
+
+    @Test
+    public void decodeChunked() throws IOException {
+        Collector c = new Collector();
+        Assert.assertTrue(new HttpResponseDecoder(c).decode(ByteBuffer.wrap(CHUNKED.getBytes(US_ASCII))));
+        Assert.assertEquals(200, c.status);
+        Assert.assertEquals("application/json", c.headers.get("Content-Type"));
+        Assert.assertEquals("Wikipedia in\r\n\r\nchunks.", new String(c.body.toByteArray(), US_ASCII));
+        Assert.assertTrue(c.complete);
+    }
+
+    @Test
+    public void decodeByteByByte() throws IOException {
+        Collector c = new Collector();
+        HttpResponseDecoder decoder = new HttpResponseDecoder(c);
+        final byte[] bytes = CHUNKED.getBytes(US_ASCII);
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertFalse(c.complete);
+            decoder.decode(ByteBuffer.wrap(bytes, i, 1));
+        }
+        Assert.assertEquals("Wikipedia in\r\n\r\nchunks.", new String(c.body.toByteArray(), US_ASCII));
+        Assert.assertTrue(c.complete);
+    }
+
+    @Test
+    public void decodeContentLength() throws IOException {
+        Collector c = new Collector();
+        HttpResponseDecoder decoder = new HttpResponseDecoder(c);
+        String s = "HTTP/1.1 404 Not Found\r\nContent-Length: 14\r\n\r\nContent-LengthXXXX";
+        ByteBuffer in = ByteBuffer.wrap(s.getBytes(US_ASCII));
+        Assert.assertTrue(decoder.decode(in));
+        Assert.assertEquals(404, c.status);
+        Assert.assertEquals("Content-Length", new String(c.body.toByteArray(), US_ASCII));
+        Assert.assertEquals(4, in.remaining());
+    }
+
+    @Test
+    public void decodeNoContent() throws IOException {
+        Collector c = new Collector();
+        Assert.assertTrue(new HttpResponseDecoder(c).decode(ByteBuffer.wrap("HTTP/1.1 204 No Content\r\n\r\n".getBytes(US_ASCII))));
+        Assert.assertEquals(204, c.status);
+        Assert.assertEquals(0, c.body.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class LogLineDecoderTest {
+
+    private static final String T1 = "2020-02-29T23:59:59.123456789Z";
+    private static final String T2 = "2020-02-29T23:59:59.5Z";
+
+    private static byte[] frame(int type, String payload) throws IOException {
+        final byte[] b = payload.getBytes(US_ASCII);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) type, 0, 0, 0, (byte) (b.length >> 24), (byte) (b.length >> 16), (byte) (b.length >> 8), (byte) b.length});
+        out.write(b);
+        return out.toByteArray();
+    }
+
+    private static List<String> decode(boolean multiplexed, boolean timestamps, byte[] data, int chunk) {
+        final List<String> lines = new ArrayList<>();
+        final LogLineDecoder decoder = new LogLineDecoder(multiplexed, timestamps, (stream, timestamp, line) -> {
+            final byte[] b = new byte[line.remaining()];
+            line.get(b);
+            lines.add(stream + " " + timestamp + " " + new String(b, US_ASCII));
+        });
+        for (int i = 0; i < data.length; i += chunk) {
+            decoder.decode(ByteBuffer.wrap(data, i, Math.min(chunk, data.length - i)));
+        }
+        decoder.flush();
+        return lines;
+    }
+
+    private static long nanos(String timestamp) {
+        final Instant instant = Instant.parse(timestamp);
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    @Test
+    public void multiplexed() throws IOException {
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write(frame(1, T1 + " hello\n" + T1 + " wor"));
+        raw.write(frame(2, T2 + " oops\n"));
+        raw.write(frame(1, "ld\n"));
+
+        final List<String> expected = new ArrayList<>();
+        expected.add("STDOUT " + nanos(T1) + " hello");
+        expected.add("STDERR " + nanos(T2) + " oops");
+        expected.add("STDOUT " + nanos(T1) + " world");
+
+        // whatever buffers are received
+        for (int chunk : new int[]{1, 3, 7, 1000}) {
+            Assert.assertEquals(expected, decode(true, true, raw.toByteArray(), chunk));
+        }
+    }
+
+    @Test
+    public void tty() {
+        final byte[] raw = (T1 + " hello\r\n" + "no timestamp\r\n" + T2 + " last").getBytes(US_ASCII);
+        final List<String> lines = decode(false, true, raw, 5);
+        Assert.assertEquals("STDOUT " + nanos(T1) + " hello", lines.get(0));
+        Assert.assertEquals("STDOUT " + LogLineDecoder.NO_TIMESTAMP + " no timestamp", lines.get(1));
+        Assert.assertEquals("STDOUT " + nanos(T2) + " last", lines.get(2));
+    }
+}
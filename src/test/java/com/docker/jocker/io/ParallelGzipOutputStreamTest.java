@@ -0,0 +1,72 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void compressBlocksInOrder() throws IOException {
+        final byte[] data = new byte[10_500];
+        final Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(bytes, Deflater.DEFAULT_COMPRESSION, 1000, pool)) {
+            out.write(data, 0, 300);
+            out.write(data[300]);
+            out.write(data, 301, data.length - 301);
+        }
+
+        Assert.assertArrayEquals(data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+
+        // each block is a complete gzip member
+        final GzipCompressorInputStream first = new GzipCompressorInputStream(new ByteArrayInputStream(bytes.toByteArray()), false);
+        Assert.assertEquals(1000, IOUtils.toByteArray(first).length);
+    }
+
+    @Test
+    public void flushWritesPartialBlock() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ParallelGzipOutputStream out = new ParallelGzipOutputStream(bytes, Deflater.BEST_SPEED, 1000, pool);
+        out.write("hello ".getBytes());
+        out.flush();
+        final int flushed = bytes.size();
+        Assert.assertTrue(flushed > 0);
+        out.write("world".getBytes());
+        out.finish();
+        Assert.assertTrue(bytes.size() > flushed);
+
+        Assert.assertEquals("hello world", IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())), "UTF-8"));
+    }
+
+    @Test
+    public void empty() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(bytes, Deflater.DEFAULT_COMPRESSION, 1000, pool).close();
+        Assert.assertEquals(0, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))).length);
+    }
+}
@@ -0,0 +1,21 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class PosixModesTest {
+
+    @Test
+    public void convert() {
+        Assert.assertEquals("rwxr-x--x", PosixFilePermissions.toString(PosixModes.toPermissions(0100751)));
+        Assert.assertEquals(0640, PosixModes.toMode(PosixFilePermissions.fromString("rw-r-----")));
+        for (int mode = 0; mode <= 0777; mode++) {
+            Assert.assertEquals(mode, PosixModes.toMode(PosixModes.toPermissions(mode)));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class Rfc3339Test {
+
+    private static long parse(String s) {
+        return Rfc3339.parseNanos(ByteBuffer.wrap(s.getBytes(US_ASCII)), 0, s.length());
+    }
+
+    private static long nanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    @Test
+    public void parseNanos() {
+        for (String s : new String[]{
+                "2020-02-29T23:59:59.123456789Z",
+                "2019-12-31T00:00:00Z",
+                "1970-01-01T00:00:00.5Z",
+                "2038-01-19T03:14:08.000000001Z",
+                "2100-03-01T12:00:00.987Z"}) {
+            Assert.assertEquals(s, nanos(Instant.parse(s)), parse(s));
+        }
+        Assert.assertEquals(nanos(OffsetDateTime.parse("2020-06-15T08:30:00.25+02:00").toInstant()),
+                parse("2020-06-15T08:30:00.25+02:00"));
+    }
+
+    @Test
+    public void invalid() {
+        Assert.assertEquals(Rfc3339.INVALID, parse("hello world"));
+        Assert.assertEquals(Rfc3339.INVALID, parse("2020-02-29 23:59:59Z"));
+        Assert.assertEquals(Rfc3339.INVALID, parse("2020-02-29T23:59:59."));
+        Assert.assertEquals(Rfc3339.INVALID, parse("2020-02-29T23:59:59.1"));
+        Assert.assertEquals(Rfc3339.INVALID, parse("2020-13-29T23:59:59Z"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class RingBufferInputStreamTest {
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(US_ASCII));
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] b = new byte[3];
+        int n;
+        while ((n = in.read(b)) >= 0) {
+            out.write(b, 0, n);
+        }
+        return out.toString("US-ASCII");
+    }
+
+    @Test
+    public void block() throws Exception {
+        final RingBufferInputStream in = new RingBufferInputStream(4, StreamDemultiplexer.Backpressure.BLOCK);
+        final Thread writer = new Thread(() -> {
+            try {
+                in.write(bytes("ABCDEFGHIJ"));
+                in.write(bytes("KLM"));
+                in.complete(null);
+            } catch (Exception e) {
+                in.complete(new IOException(e));
+            }
+        });
+        writer.start();
+        Assert.assertEquals("ABCDEFGHIJKLM", readAll(in));
+        writer.join();
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+        final RingBufferInputStream in = new RingBufferInputStream(4, StreamDemultiplexer.Backpressure.DROP_OLDEST);
+        in.write(bytes("ABC"));
+        in.write(bytes("DE"));
+        Assert.assertEquals('B', in.read());
+        in.write(bytes("FGHIJK"));
+        in.complete(null);
+        Assert.assertEquals("HIJK", readAll(in));
+        // A, then FG which can't fit, then CDE
+        Assert.assertEquals(6, in.getDropped());
+    }
+
+    @Test
+    public void spill() throws Exception {
+        final RingBufferInputStream in = new RingBufferInputStream(4, StreamDemultiplexer.Backpressure.SPILL);
+        in.write(bytes("ABCDEF"));
+        Assert.assertEquals('A', in.read());
+        // ring has room again, but must not overtake spilled bytes
+        in.write(bytes("G"));
+        final byte[] b = new byte[6];
+        int read = 0;
+        while (read < b.length) {
+            read += in.read(b, read, b.length - read);
+        }
+        Assert.assertEquals("BCDEFG", new String(b, US_ASCII));
+
+        in.write(bytes("HI"));
+        in.complete(null);
+        Assert.assertEquals("HI", readAll(in));
+        in.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void failure() throws Exception {
+        final RingBufferInputStream in = new RingBufferInputStream(4, StreamDemultiplexer.Backpressure.BLOCK);
+        in.write(bytes("AB"));
+        in.complete(new IOException("connection reset"));
+        Assert.assertEquals("AB", new String(new byte[]{(byte) in.read(), (byte) in.read()}, US_ASCII));
+        in.read();
+    }
+}
@@ -0,0 +1,38 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.channels.spi.SelectorProvider;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class SelectorLoopTest {
+
+    @Test(timeout = 10_000)
+    public void closeSelector() throws Exception {
+        final SelectorLoop loop = new SelectorLoop(SelectorProvider.provider(), "test-selector");
+        loop.close();
+        Assert.assertFalse(loop.isOpen());
+    }
+
+    @Test(timeout = 10_000)
+    public void closeSelectorFromLoopThread() throws Exception {
+        final SelectorLoop loop = new SelectorLoop(SelectorProvider.provider(), "test-selector");
+        final CountDownLatch closed = new CountDownLatch(1);
+        loop.execute(() -> {
+            try {
+                loop.close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            closed.countDown();
+        });
+        closed.await();
+        while (loop.isOpen()) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class Sha256Test {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hex() {
+        Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                Sha256.hex(Sha256.digest().digest("abc".getBytes(US_ASCII))));
+    }
+
+    @Test
+    public void hashFileLargerThanBuffer() throws Exception {
+        final byte[] content = new byte[BufferPool.DEFAULT_BUFFER_SIZE * 3 + 17];
+        new Random(42).nextBytes(content);
+        final Path file = folder.newFile().toPath();
+        Files.write(file, content);
+        Assert.assertEquals(Sha256.hex(Sha256.digest().digest(content)), Sha256.hash(file));
+    }
+}
@@ -0,0 +1,52 @@
+package com.docker.jocker.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class StreamDemultiplexerTest {
+
+    private static CompletableFuture<byte[]> consume(InputStream in) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] b = new byte[7];
+                int n;
+                while ((n = in.read(b)) >= 0) {
+                    out.write(b, 0, n);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void demultiplex() throws Exception {
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        for (int i = 0; i < 1000; i++) {
+            raw.write(new byte[]{1,0,0,0, 0,0,0,3, 65,66,67});
+            raw.write(new byte[]{2,0,0,0, 0,0,0,2, 68,69});
+        }
+
+        try (StreamDemultiplexer demux = new StreamDemultiplexer(
+                new DockerMultiplexedFrameReader(new ByteArrayInputStream(raw.toByteArray())),
+                16, StreamDemultiplexer.Backpressure.BLOCK)) {
+            final CompletableFuture<byte[]> stdout = consume(demux.stdout());
+            final CompletableFuture<byte[]> stderr = consume(demux.stderr());
+            Assert.assertEquals(3000, stdout.get().length);
+            Assert.assertEquals(2000, stderr.get().length);
+            Assert.assertEquals('C', stdout.get()[2999]);
+            Assert.assertEquals('E', stderr.get()[1999]);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class TarArchiveTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void directory() throws IOException {
+        final Path root = tmp.newFolder("context").toPath();
+        final Path sub = Files.createDirectories(root.resolve("sub"));
+        Files.write(root.resolve("empty"), new byte[0]);
+        final Path script = Files.write(sub.resolve("run.sh"), "#!/bin/sh\necho hello\n".getBytes(UTF_8));
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-x---"));
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 20; i++) name.append("long_name_");
+        Files.write(sub.resolve(name.toString()), new byte[1000]);
+
+        final TarArchive archive = new TarArchive().add(root, "app");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive.writeTo(out);
+        Assert.assertEquals(out.size(), archive.length());
+        Assert.assertArrayEquals(out.toByteArray(), IOUtils.toByteArray(archive.openStream()));
+
+        final Map<String, TarArchiveEntry> entries = new HashMap<>();
+        final Map<String, String> contents = new HashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                entries.put(entry.getName(), entry);
+                contents.put(entry.getName(), IOUtils.toString(tar, UTF_8));
+            }
+        }
+        Assert.assertEquals(5, entries.size());
+        Assert.assertTrue(entries.get("app/").isDirectory());
+        Assert.assertTrue(entries.get("app/sub/").isDirectory());
+        Assert.assertEquals(0750, entries.get("app/sub/run.sh").getMode() & 0777);
+        Assert.assertEquals("#!/bin/sh\necho hello\n", contents.get("app/sub/run.sh"));
+        Assert.assertEquals(0, entries.get("app/empty").getSize());
+        Assert.assertEquals(1000, entries.get("app/sub/" + name).getSize());
+    }
+
+    @Test
+    public void symlink() throws IOException {
+        final Path root = tmp.newFolder("links").toPath();
+        Files.write(root.resolve("target"), "content".getBytes(UTF_8));
+        Files.createSymbolicLink(root.resolve("link"), root.resolve("target").getFileName());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TarArchive().add(root.resolve("link")).writeTo(out);
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            final TarArchiveEntry entry = tar.getNextTarEntry();
+            Assert.assertTrue(entry.isSymbolicLink());
+            Assert.assertEquals("link", entry.getName());
+            Assert.assertEquals("target", entry.getLinkName());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws IOException {
+        final Path file = tmp.newFile("data").toPath();
+        Files.write(file, new byte[10000]);
+        final TarArchive archive = new TarArchive().add(file);
+        Files.write(file, new byte[10]);
+        archive.writeTo(new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,104 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class TarEntryFinderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void skipOtherEntriesAndStopOnceFound() throws IOException {
+        final byte[] large = new byte[1024 * 1024];
+        final byte[] tar = IOUtils.toByteArray(new TarInputStreamBuilder()
+                .add("etc/large.bin", 0644, large)
+                .add("etc/app.conf", 0644, "key=value".getBytes(UTF_8))
+                .add("etc/hosts", 0644, "127.0.0.1 localhost".getBytes(UTF_8))
+                .add("etc/other.bin", 0644, large)
+                .build());
+
+        final CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(tar));
+        final Map<String, String> found = new HashMap<>();
+        final TarEntryFinder finder = new TarEntryFinder(Arrays.asList("/etc/hosts", "./etc/app.conf", "etc/missing"));
+        Assert.assertEquals(Collections.singleton("etc/missing"), finder.find(in, (entry, content) ->
+                found.put(entry.getName(), IOUtils.toString(content, UTF_8))));
+        Assert.assertEquals("key=value", found.get("etc/app.conf"));
+        Assert.assertEquals("127.0.0.1 localhost", found.get("etc/hosts"));
+        // large content has been skipped, not read
+        Assert.assertTrue(in.skipped >= large.length);
+        Assert.assertTrue(in.read < 64 * 1024);
+
+        final CountingInputStream partial = new CountingInputStream(new ByteArrayInputStream(tar));
+        Assert.assertTrue(new TarEntryFinder(Collections.singleton("etc/hosts")).find(partial, (entry, content) -> {}).isEmpty());
+        // stopped before last entry
+        Assert.assertTrue(partial.read + partial.skipped < tar.length - large.length);
+    }
+
+    @Test
+    public void transferToFileChannel() throws IOException {
+        final byte[] content = new byte[200_000];
+        Arrays.fill(content, (byte) 'x');
+        final InputStream tar = new TarInputStreamBuilder()
+                .add("data/file.bin", 0644, content)
+                .build();
+
+        final Path target = tmp.newFile().toPath();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            new TarEntryFinder(Collections.singleton("data/file.bin")).find(tar, (entry, in) ->
+                    Assert.assertEquals(content.length, TarEntryFinder.transferTo(in, channel)));
+        }
+        Assert.assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long read;
+        long skipped;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int c = super.read();
+            if (c >= 0) read++;
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) read += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long s = super.skip(n);
+            skipped += s;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Date;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class TarExtractorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final Date MTIME = new Date(1_500_000_000_000L);
+
+    @Test
+    public void extract() throws IOException {
+        final byte[] large = new byte[10_000];
+        new Random(42).nextBytes(large);
+
+        final InputStream tar = new TarInputStreamBuilder()
+                .add(entry("app/", TarConstants.LF_DIR, 0750), null)
+                .add(entry("app/bin/", TarConstants.LF_DIR, 0755), null)
+                .add(file("app/bin/run.sh", 0755, "#!/bin/sh".getBytes(UTF_8)), () -> new ByteArrayInputStream("#!/bin/sh".getBytes(UTF_8)))
+                .add(file("app/data.bin", 0640, large), () -> new ByteArrayInputStream(large))
+                .add(file("app/empty", 0600, new byte[0]), null)
+                .add(link("app/current", TarConstants.LF_SYMLINK, "bin/run.sh"), null)
+                .add(link("app/copy.bin", TarConstants.LF_LINK, "app/data.bin"), null)
+                .build();
+
+        final Path target = tmp.newFolder().toPath();
+        // small buffers, so large file is sent to writer in many chunks
+        final TarExtractor.Result result = new TarExtractor(target, 3, new BufferPool(1024, 2)).extract(tar);
+        Assert.assertEquals(5, result.getFiles());
+        Assert.assertEquals(2, result.getDirectories());
+        Assert.assertEquals(large.length + 9, result.getBytes());
+        Assert.assertTrue(result.getThroughput() > 0);
+
+        final Path app = target.resolve("app");
+        Assert.assertArrayEquals(large, Files.readAllBytes(app.resolve("data.bin")));
+        Assert.assertArrayEquals(large, Files.readAllBytes(app.resolve("copy.bin")));
+        Assert.assertEquals("#!/bin/sh", new String(Files.readAllBytes(app.resolve("bin/run.sh")), UTF_8));
+        Assert.assertEquals(0, Files.size(app.resolve("empty")));
+        Assert.assertEquals(Paths.get("bin/run.sh"), Files.readSymbolicLink(app.resolve("current")));
+
+        Assert.assertEquals("rwxr-xr-x", PosixFilePermissions.toString(Files.getPosixFilePermissions(app.resolve("bin/run.sh"))));
+        Assert.assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(app.resolve("data.bin"))));
+        Assert.assertEquals("rwxr-x---", PosixFilePermissions.toString(Files.getPosixFilePermissions(app)));
+        Assert.assertEquals(MTIME.getTime(), Files.getLastModifiedTime(app.resolve("data.bin")).toMillis());
+        Assert.assertEquals(MTIME.getTime(), Files.getLastModifiedTime(app).toMillis());
+        Assert.assertEquals(MTIME.getTime(), Files.getLastModifiedTime(app.resolve("bin")).toMillis());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectPathOutsideTarget() throws IOException {
+        final InputStream tar = new TarInputStreamBuilder()
+                .add("../escape", 0644, "x".getBytes(UTF_8))
+                .build();
+        new TarExtractor(tmp.newFolder().toPath()).extract(tar);
+    }
+
+    @Test
+    public void rejectWriteThroughSymlink() throws IOException {
+        final Path outside = tmp.newFolder().toPath();
+        final InputStream tar = new TarInputStreamBuilder()
+                .add(link("dir", TarConstants.LF_SYMLINK, outside.toString()), null)
+                .add("dir/escape", 0644, "x".getBytes(UTF_8))
+                .build();
+        try {
+            new TarExtractor(tmp.newFolder().toPath()).extract(tar);
+            Assert.fail("extracted through symbolic link");
+        } catch (IOException e) {
+            Assert.assertFalse(Files.exists(outside.resolve("escape"), LinkOption.NOFOLLOW_LINKS));
+        }
+    }
+
+    @Test
+    public void replaceDuplicateEntries() throws IOException {
+        final byte[] large = new byte[10_000];
+        new Random(42).nextBytes(large);
+        final InputStream tar = new TarInputStreamBuilder()
+                .add(file("data", 0600, large), () -> new ByteArrayInputStream(large))
+                .add(file("data", 0644, "last".getBytes(UTF_8)), () -> new ByteArrayInputStream("last".getBytes(UTF_8)))
+                .build();
+        final Path target = tmp.newFolder().toPath();
+        new TarExtractor(target, 3, new BufferPool(1024, 2)).extract(tar);
+        Assert.assertEquals("last", new String(Files.readAllBytes(target.resolve("data")), UTF_8));
+        Assert.assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(target.resolve("data"))));
+    }
+
+    @Test
+    public void dontChangeModeThroughReplacingSymlink() throws IOException {
+        final Path outside = tmp.newFolder().toPath();
+        final Path secret = Files.write(outside.resolve("secret"), "secret".getBytes(UTF_8));
+        Files.setPosixFilePermissions(secret, PosixFilePermissions.fromString("rw-------"));
+        Files.setPosixFilePermissions(outside, PosixFilePermissions.fromString("rwx------"));
+
+        final byte[] large = new byte[10_000];
+        new Random(42).nextBytes(large);
+        final InputStream tar = new TarInputStreamBuilder()
+                .add(entry("dir/", TarConstants.LF_DIR, 0777), null)
+                .add(link("dir", TarConstants.LF_SYMLINK, outside.toString()), null)
+                .add(file("file", 0666, large), () -> new ByteArrayInputStream(large))
+                .add(link("file", TarConstants.LF_SYMLINK, secret.toString()), null)
+                .build();
+        final Path target = tmp.newFolder().toPath();
+        new TarExtractor(target, 3, new BufferPool(1024, 2)).extract(tar);
+
+        Assert.assertTrue(Files.isSymbolicLink(target.resolve("dir")));
+        Assert.assertTrue(Files.isSymbolicLink(target.resolve("file")));
+        Assert.assertEquals("secret", new String(Files.readAllBytes(secret), UTF_8));
+        Assert.assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(secret)));
+        Assert.assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(outside)));
+    }
+
+    @Test
+    public void rejectWriteThroughHardLinkToSymlink() throws IOException {
+        final Path outside = tmp.newFolder().toPath();
+        final InputStream tar = new TarInputStreamBuilder()
+                .add(link("dir", TarConstants.LF_SYMLINK, outside.toString()), null)
+                .add(link("hard", TarConstants.LF_LINK, "dir"), null)
+                .add("hard/escape", 0644, "x".getBytes(UTF_8))
+                .build();
+        try {
+            new TarExtractor(tmp.newFolder().toPath()).extract(tar);
+            Assert.fail("extracted through symbolic link");
+        } catch (IOException e) {
+            Assert.assertFalse(Files.exists(outside.resolve("escape"), LinkOption.NOFOLLOW_LINKS));
+        }
+    }
+
+    private static TarArchiveEntry entry(String name, byte type, int mode) {
+        final TarArchiveEntry entry = new TarArchiveEntry(name, type);
+        entry.setMode(entry.getMode() & ~0777 | mode);
+        entry.setModTime(MTIME);
+        return entry;
+    }
+
+    private static TarArchiveEntry file(String name, int mode, byte[] content) {
+        final TarArchiveEntry entry = entry(name, TarConstants.LF_NORMAL, mode);
+        entry.setSize(content.length);
+        return entry;
+    }
+
+    private static TarArchiveEntry link(String name, byte type, String target) {
+        final TarArchiveEntry entry = entry(name, type, 0777);
+        entry.setLinkName(target);
+        return entry;
+    }
+}
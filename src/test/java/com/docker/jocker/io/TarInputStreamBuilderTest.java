@@ -0,0 +1,113 @@
+package com.docker.jocker.io;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class TarInputStreamBuilderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static Map<String, byte[]> read(InputStream in) throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(in)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                final byte[] content = IOUtils.toByteArray(tar);
+                Assert.assertEquals(entry.getSize(), content.length);
+                entries.put(entry.getName(), content);
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void entries() throws IOException {
+        final Path file = tmp.newFile("Dockerfile").toPath();
+        Files.write(file, "FROM alpine\n".getBytes(UTF_8));
+        final byte[] large = new byte[100_000];
+        for (int i = 0; i < large.length; i++) large[i] = (byte) i;
+
+        final InputStream context = new TarInputStreamBuilder(1024)
+                .add("Dockerfile", 0644, file)
+                .add("bytes", 0644, "bytes".getBytes(UTF_8))
+                .add("stream", 0644, new ByteArrayInputStream("stream".getBytes(UTF_8)), 6)
+                .add("unknown", 0644, new ByteArrayInputStream("unknown".getBytes(UTF_8)))
+                .add("spilled", 0644, new ByteArrayInputStream(large))
+                .build();
+
+        final Map<String, byte[]> entries = read(context);
+        Assert.assertArrayEquals(new Object[]{"Dockerfile", "bytes", "stream", "unknown", "spilled"}, entries.keySet().toArray());
+        Assert.assertEquals("FROM alpine\n", new String(entries.get("Dockerfile"), UTF_8));
+        Assert.assertEquals("unknown", new String(entries.get("unknown"), UTF_8));
+        Assert.assertArrayEquals(large, entries.get("spilled"));
+    }
+
+    @Test
+    public void lazy() throws IOException {
+        final AtomicInteger opened = new AtomicInteger();
+        final TarInputStreamBuilder builder = new TarInputStreamBuilder();
+        for (int i = 0; i < 3; i++) {
+            builder.add("file" + i, 0644, 100_000, () -> {
+                opened.incrementAndGet();
+                return new ByteArrayInputStream(new byte[100_000]);
+            });
+        }
+        final InputStream in = builder.build();
+        Assert.assertEquals(0, opened.get());
+        in.read(new byte[1024]);
+        Assert.assertEquals(1, opened.get());
+        IOUtils.toByteArray(in);
+        Assert.assertEquals(3, opened.get());
+    }
+
+    @Test
+    public void streamsReadWhenAdded() throws IOException {
+        final byte[] large = new byte[100_000];
+        new Random(42).nextBytes(large);
+        final TarInputStreamBuilder builder = new TarInputStreamBuilder(1024);
+        try (InputStream in = new ByteArrayInputStream("stream".getBytes(UTF_8))) {
+            builder.add("stream", 0644, in, 6);
+        }
+        try (InputStream in = new ByteArrayInputStream(large)) {
+            builder.add("spilled", 0644, in, large.length);
+        }
+        final InputStream in = new ByteArrayInputStream("unknown".getBytes(UTF_8));
+        builder.add("unknown", 0644, in);
+        Assert.assertEquals(0, in.available());
+
+        final Map<String, byte[]> entries = read(builder.build());
+        Assert.assertEquals("stream", new String(entries.get("stream"), UTF_8));
+        Assert.assertArrayEquals(large, entries.get("spilled"));
+        Assert.assertEquals("unknown", new String(entries.get("unknown"), UTF_8));
+    }
+
+    @Test(expected = EOFException.class)
+    public void shorterThanAnnounced() throws IOException {
+        final InputStream in = new TarInputStreamBuilder()
+                .add("short", 0644, new ByteArrayInputStream(new byte[10]), 20)
+                .build();
+        IOUtils.toByteArray(in);
+    }
+}
@@ -0,0 +1,47 @@
+package com.docker.jocker.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
+ */
+public class EventsFiltersTest {
+
+    private static SystemEventsResponse event(String type, String action, String id, String name) {
+        return new SystemEventsResponse()
+                .type(type)
+                .action(action)
+                .actor(new SystemEventsResponseActor()
+                        .ID(id)
+                        .putAttributesItem("name", name)
+                        .putAttributesItem("com.example.team", "core"));
+    }
+
+    @Test
+    public void matchContainer() {
+        final SystemEventsResponse event = event("container", "start", "ede54ee1afda366a", "my-container");
+        Assert.assertTrue(new EventsFilters().test(event));
+        Assert.assertTrue(new EventsFilters().container("my-container").test(event));
+        Assert.assertTrue(new EventsFilters().container("ede54ee1").test(event));
+        Assert.assertTrue(new EventsFilters().container("other").container("my-container").test(event));
+        Assert.assertFalse(new EventsFilters().container("other").test(event));
+        Assert.assertFalse(new EventsFilters().volume("my-container").test(event));
+    }
+
+    @Test
+    public void matchAction() {
+        Assert.assertTrue(new EventsFilters().event("start").event("die").test(event("container", "die", "a", "b")));
+        Assert.assertFalse(new EventsFilters().event("start").test(event("container", "die", "a", "b")));
+        Assert.assertTrue(new EventsFilters().event("health_status").test(event("container", "health_status: healthy", "a", "b")));
+    }
+
+    @Test
+    public void matchLabels() {
+        final SystemEventsResponse event = event("container", "start", "a", "b");
+        Assert.assertTrue(new EventsFilters().label("com.example.team").test(event));
+        Assert.assertTrue(new EventsFilters().label("com.example.team=core").test(event));
+        Assert.assertFalse(new EventsFilters().label("com.example.team=web").test(event));
+        Assert.assertFalse(new EventsFilters().label("com.example.team").label("com.example.env").test(event));
+    }
+}